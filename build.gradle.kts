@@ -4,6 +4,8 @@ plugins {
     id("java")
     id("org.springframework.boot") version "3.4.4"
     id("io.spring.dependency-management") version "1.1.7"
+    // micro benchmarks in src/jmh/java: ./gradlew jmh
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.maymichael"
@@ -18,6 +20,21 @@ repositories {
     mavenCentral()
 }
 
+// end-to-end performance tests against a local cluster in src/perfTest/java: ./gradlew perfTest
+sourceSets {
+    create("perfTest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val perfTestImplementation: Configuration by configurations.getting {
+    extendsFrom(configurations.testImplementation.get())
+}
+val perfTestRuntimeOnly: Configuration by configurations.getting {
+    extendsFrom(configurations.testRuntimeOnly.get())
+}
+
 dependencies {
     // https://mvnrepository.com/artifact/org.apache.commons/commons-lang3
     implementation("org.apache.commons:commons-lang3:3.17.0")
@@ -36,6 +53,8 @@ dependencies {
     implementation("com.google.guava:guava:33.4.8-jre")
 
     implementation("commons-io:commons-io:2.14.0")
+    // latency percentiles for the load generator
+    implementation("org.hdrhistogram:HdrHistogram:2.2.2")
     annotationProcessor("org.springframework.boot:spring-boot-configuration-processor")
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.projectlombok:lombok")
@@ -46,8 +65,56 @@ dependencies {
     testImplementation("io.projectreactor:reactor-test")
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    "perfTestCompileOnly"("org.projectlombok:lombok")
+    "perfTestAnnotationProcessor"("org.projectlombok:lombok")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
+}
+
+tasks.register<Test>("perfTest") {
+    description = "Runs the performance tests against a local cluster and compares them to the stored baseline."
+    group = "verification"
+    testClassesDirs = sourceSets["perfTest"].output.classesDirs
+    classpath = sourceSets["perfTest"].runtimeClasspath
+    // timings, never up to date
+    outputs.upToDateWhen { false }
+    shouldRunAfter(tasks.test)
+    // -PupdatePerfBaseline stores the results as new baseline, -PperfTolerance=2.0 allows more slack,
+    // -PvalkeyServer=/path/to/valkey-server if it isn't on the PATH
+    systemProperty("perf.baseline", file("src/perfTest/resources/perf-baseline.json").absolutePath)
+    systemProperty("perf.results", layout.buildDirectory.file("reports/perf/results.json").get().asFile.absolutePath)
+    systemProperty("perf.tolerance", project.findProperty("perfTolerance") ?: "1.5")
+    systemProperty("perf.updateBaseline", project.hasProperty("updatePerfBaseline"))
+    (project.findProperty("valkeyServer") as String?)?.let { systemProperty("valkey.server", it) }
+}
+
+// regressions fail the build once a baseline is recorded, until then check doesn't start a cluster at all
+// (the suite also skips itself without a server binary or a stored baseline when run directly)
+if (file("src/perfTest/resources/perf-baseline.json").exists()) {
+    tasks.check {
+        dependsOn("perfTest")
+    }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // e.g. -Pjmh.includes=Base64 -Pjmh.profilers=gc
+    (project.findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+    (project.findProperty("jmh.profilers") as String?)?.let { profilers.set(listOf(it)) }
+}
+
+// ahead-of-time processed bean definitions for faster startup, opt-in: ./gradlew bootBuildImage -Paot
+if (project.hasProperty("aot")) {
+    apply(plugin = "org.springframework.boot.aot")
+}
+
+tasks.named<BootBuildImage>("bootBuildImage") {
+    // class data sharing archive, created by a training run during the image build
+    environment.put("BP_JVM_CDS_ENABLED", "true")
+    if (project.hasProperty("aot")) {
+        environment.put("BP_SPRING_AOT_ENABLED", "true")
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.maymichael;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.maymichael.data.BinaryDataBase64;
+import org.maymichael.util.BinaryDataBase64Format;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BinaryDataBase64 json: jackson (previous converter path) vs. the streaming {@link BinaryDataBase64Format}.
+ * Run with {@code ./gradlew jmh}, allocation rates with {@code -Pjmh.profilers=gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base64CodecBenchmark {
+
+    // sizes of the demo data set (100-300 KB)
+    @Param({"1000", "100000", "300000"})
+    int payloadSize;
+
+    private Jackson2JsonRedisSerializer<BinaryDataBase64> jackson;
+    private BinaryDataBase64 value;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        var mapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
+                .setDefaultPropertyInclusion(JsonInclude.Include.NON_EMPTY);
+        jackson = new Jackson2JsonRedisSerializer<>(mapper, BinaryDataBase64.class);
+        value = BinaryDataBase64.builder()
+                .data(RandomStringUtils.insecure().nextAlphanumeric(payloadSize).getBytes(StandardCharsets.UTF_8))
+                .build();
+        json = jackson.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() {
+        return jackson.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] encodeStreaming() {
+        return BinaryDataBase64Format.encode(value);
+    }
+
+    @Benchmark
+    public BinaryDataBase64 decodeJackson() {
+        return jackson.deserialize(json);
+    }
+
+    @Benchmark
+    public BinaryDataBase64 decodeStreaming() {
+        return BinaryDataBase64Format.decode(json);
+    }
+}
@@ -0,0 +1,104 @@
+package org.springframework.data.redis.core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.maymichael.data.BinaryData;
+import org.maymichael.data.BinaryDataBase64;
+import org.maymichael.data.BinaryDataRaw;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.util.BinaryDataBase64ToBytesConverter;
+import org.maymichael.util.BinaryDataToBytesConverter;
+import org.maymichael.util.BytesToBinaryDataBase64Converter;
+import org.maymichael.util.BytesToBinaryDataConverter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per entity cost of the write path up to the connection (a no-op one, nothing is sent): converter
+ * ({@code RedisData}, bucket and {@code rawMap()} copy, key building and {@link IndexWriter}, as the pipelined
+ * adapter did before) vs. the precompiled entity writer encoding into reused entities, as a batched write does.
+ * Small payloads, so the per entity overhead and not the payload serialization dominates. In this package for
+ * {@link IndexWriter}. Run with {@code ./gradlew jmh -Pjmh.includes=EntityWrite -Pjmh.profilers=gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityWriteBenchmark {
+
+    @Param({"KRYO", "RAW", "BASE64", "DEDUP"})
+    String serializer;
+
+    @Param({"100", "1000"})
+    int payloadSize;
+
+    private PipelinedRedisKeyValueAdapter adapter;
+    private PipelinedRedisKeyValueAdapter.Encoder encoder;
+    private RedisConnection connection;
+    // last command arguments, so the commands can't be optimized away
+    private Object[] lastArgs;
+    private TransactionValue value;
+
+    @Setup
+    public void setup() {
+        var mapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
+                .setDefaultPropertyInclusion(JsonInclude.Include.NON_EMPTY);
+        var template = new RedisTemplate<String, byte[]>();
+        // never connected, only used for conversion
+        template.setConnectionFactory(new LettuceConnectionFactory());
+        var conversions = new RedisCustomConversions(List.of(
+                new BinaryDataToBytesConverter(), new BytesToBinaryDataConverter(),
+                new BinaryDataBase64ToBytesConverter(mapper), new BytesToBinaryDataBase64Converter(mapper)));
+        adapter = new PipelinedRedisKeyValueAdapter(template, new RedisMappingContext(), conversions);
+        encoder = adapter.encoder();
+        // every command (also the *Commands() accessors) ends up here
+        connection = (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                    lastArgs = args;
+                    return method.getName().endsWith("Commands") ? proxy : null;
+                });
+
+        var payload = RandomStringUtils.insecure().nextAlphanumeric(payloadSize).getBytes(StandardCharsets.UTF_8);
+        var builder = TransactionValue.builder().tid("tid").something("even");
+        switch (serializer) {
+            case "KRYO" -> builder.binaryData(BinaryData.builder().data(payload).build());
+            case "RAW" -> builder.binaryDataRaw(BinaryDataRaw.builder().data(payload).build());
+            case "BASE64" -> builder.binaryDataBase64(BinaryDataBase64.builder().data(payload).build());
+            default -> builder.binaryDataDigest("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        }
+        value = builder.build();
+        // compiles and verifies the writer
+        adapter.encode(value.getId(), value);
+    }
+
+    @Benchmark
+    public Object[] converter() {
+        var rdo = adapter.toRedisData(value.getId(), value);
+        var conversionService = adapter.getPipelineConverter().getConversionService();
+        byte[] key = conversionService.convert(rdo.getId(), byte[].class);
+        connection.hashCommands().hMSet(adapter.createKey(rdo.getKeyspace(), rdo.getId()), rdo.getBucket().rawMap());
+        connection.setCommands().sAdd(conversionService.convert(rdo.getKeyspace(), byte[].class), key);
+        new IndexWriter(connection, adapter.getPipelineConverter()).createIndexes(key, rdo.getIndexedData());
+        return lastArgs;
+    }
+
+    @Benchmark
+    public Object[] precompiled() {
+        var encoded = encoder.encode(value.getId(), value);
+        adapter.putOnConnection(connection, encoded.getId(), encoded);
+        encoder.reset();
+        return lastArgs;
+    }
+}
@@ -0,0 +1,162 @@
+package org.maymichael.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "playground")
+public class PlaygroundProperties {
+
+    public enum BinaryFormat {
+        // legacy, layout bound to class registration order and fields
+        KRYO,
+        // BinaryDataFormat, magic + version header and tagged fields
+        VERSIONED,
+    }
+
+    public enum ConsistencyMode {
+        // reads go to any replica (REPLICA_PREFERRED), they may miss writes that didn't replicate yet
+        EVENTUAL,
+        // reads of a session only go to replicas that caught up with the session's writes, the primary otherwise
+        SESSION,
+    }
+
+    private Serialization serialization = new Serialization();
+    private KryoPool kryo = new KryoPool();
+    private Warmup warmup = new Warmup();
+    private Pipeline pipeline = new Pipeline();
+    private Repository repository = new Repository();
+    private Index index = new Index();
+    private Transfer transfer = new Transfer();
+    private ChangeFeed changeFeed = new ChangeFeed();
+    private Tenancy tenancy = new Tenancy();
+    private Consistency consistency = new Consistency();
+
+    @Data
+    public static class Serialization {
+        // format used to WRITE BinaryData, both formats can always be read
+        // rollout: deploy readers first (any value here), then switch every pod to VERSIONED
+        private BinaryFormat binaryFormat = BinaryFormat.KRYO;
+    }
+
+    @Data
+    public static class KryoPool {
+        // the pool keeps as many idle instances as were concurrently in use in the last window,
+        // bounded by min-idle and max-idle
+        private int minIdle = 8;
+        private int maxIdle = 256;
+        private Duration window = Duration.ofSeconds(30);
+        // instances created (and registered) at startup
+        private int prewarm = 16;
+    }
+
+    @Data
+    public static class Warmup {
+        // initialize mapping, converters and node connections before the app reports ready
+        private boolean enabled = true;
+        // abort startup if the cluster can't be reached, instead of falling back to lazy initialization
+        private boolean failOnError = false;
+    }
+
+    @Data
+    public static class Pipeline {
+        // commands written to a node connection before it is flushed
+        private int maxBatchCommands = 1000;
+        // payload bytes queued or awaiting a reply per node, writers block above that
+        private DataSize maxInFlightBytesPerNode = DataSize.ofMegabytes(64);
+        private Adaptive adaptive = new Adaptive();
+    }
+
+    @Data
+    public static class Adaptive {
+        // PIPELINED_ADAPTER splits its pipelines at max-items or the current byte budget, whatever comes first
+        private int maxItems = 1000;
+        // byte budget per pipeline, grows by increase-step while pipelines complete within target-latency,
+        // halves otherwise
+        private DataSize minBytes = DataSize.ofKilobytes(256);
+        private DataSize maxBytes = DataSize.ofMegabytes(64);
+        private DataSize initialBytes = DataSize.ofMegabytes(8);
+        private DataSize increaseStep = DataSize.ofMegabytes(1);
+        private Duration targetLatency = Duration.ofMillis(100);
+        // bytes of all PIPELINED_ADAPTER pipelines in flight (all callers, all nodes), callers block above that
+        private DataSize maxInFlightBytes = DataSize.ofMegabytes(128);
+    }
+
+    @Data
+    public static class Repository {
+        // entities per pipeline for the repositories' saveAll/findAllById/deleteAll
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class Index {
+        // CompactIndexWriter instead of spring data's index sets + per entity :idx helper set
+        // not compatible with existing index data, switch on an empty keyspace (or reindex)
+        private boolean compact = false;
+        // "path" or "keyspace:path", stored in sharded sorted sets instead of one set per value
+        private List<String> lowCardinalityPaths = new ArrayList<>(List.of("value:something"));
+        private int shards = 8;
+    }
+
+    @Data
+    public static class Transfer {
+        // default directory of keyspace exports/imports
+        private String directory = "export";
+        // SCAN COUNT hint per call, per node
+        private int scanCount = 1000;
+        // keys per read pipeline on export, entries per write pipeline on import
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class ChangeFeed {
+        // append an event (tid, ids, raw payload bytes) per written batch of values to a stream
+        private boolean enabled = false;
+        private String streamPrefix = "changes";
+        // streams {prefix}:{0..shards-1}, events of one tid always go to the same one
+        private int shards = 4;
+        // approximate MAXLEN per stream
+        private long maxLength = 100_000;
+        // XREADGROUP COUNT and BLOCK of the consumers
+        private int readCount = 100;
+        private Duration block = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Tenancy {
+        // payload bytes in flight of all tenants together, shared by weight when tenants compete
+        private DataSize maxInFlightBytes = DataSize.ofMegabytes(64);
+        // tenants by name, every tenant gets its own client, connections and node pipelines
+        private Map<String, Tenant> tenants = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Tenant {
+        // operations (saves/reads) of the tenant running at once, callers wait above that
+        private int maxConcurrentOperations = 8;
+        // share of max-in-flight-bytes relative to the other tenants
+        private int weight = 1;
+        // netty event loop threads of the tenant's client, 0 uses the shared client's resources
+        private int ioThreads = 2;
+        private DataSize maxInFlightBytesPerNode = DataSize.ofMegabytes(16);
+    }
+
+    @Data
+    public static class Consistency {
+        private ConsistencyMode mode = ConsistencyMode.EVENTUAL;
+        // WAIT for that many replicas after critical batches written on the node pipelines, 0 never waits
+        private int waitReplicas = 0;
+        private Duration waitTimeout = Duration.ofSeconds(1);
+        // a replica that is behind is asked for its offset at most once per interval (shared by all readers)
+        private Duration offsetRefreshInterval = Duration.ofMillis(10);
+        // how long a read waits for a replica to catch up before it goes to the primary
+        private Duration maxReplicaWait = Duration.ofMillis(50);
+    }
+}
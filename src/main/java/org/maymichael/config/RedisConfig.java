@@ -9,6 +9,9 @@
 import io.lettuce.core.TimeoutOptions;
 import io.lettuce.core.cluster.ClusterClientOptions;
 import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.protocol.CommandType;
 import io.lettuce.core.protocol.ProtocolKeyword;
 import io.lettuce.core.protocol.RedisCommand;
@@ -16,17 +19,26 @@
 import io.lettuce.core.resource.Delay;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.maymichael.data.BinaryData;
+import org.maymichael.data.PipelinedRedisRepository;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.services.BlobStore;
 import org.maymichael.util.BinaryDataBase64ToBytesConverter;
+import org.maymichael.util.BinaryDataCodec;
 import org.maymichael.util.BinaryDataToBytesConverter;
 import org.maymichael.util.BytesToBinaryDataBase64Converter;
 import org.maymichael.util.BytesToBinaryDataConverter;
+import org.maymichael.util.KryoPool;
+import org.maymichael.util.KryoRedisSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.*;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.CompactIndexWriter;
 import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
 import org.springframework.data.redis.core.RedisKeyValueAdapter;
 import org.springframework.data.redis.core.RedisKeyValueTemplate;
@@ -44,7 +56,8 @@
 
 @Slf4j
 @Configuration
-@EnableRedisRepositories
+@EnableRedisRepositories(basePackageClasses = PipelinedRedisRepository.class, repositoryBaseClass = PipelinedRedisRepository.class)
+@EnableConfigurationProperties(PlaygroundProperties.class)
 @RequiredArgsConstructor
 public class RedisConfig {
 
@@ -52,6 +65,7 @@ public class RedisConfig {
     private Duration redisCommandTimeout;
 
     private final RedisProperties redisProperties;
+    private final PlaygroundProperties playgroundProperties;
 
     static class DynamicClusterTimeout extends TimeoutOptions.TimeoutSource {
         private static final Set<ProtocolKeyword> META_COMMAND_TYPES = ImmutableSet.<ProtocolKeyword>builder()
@@ -122,6 +136,7 @@ protected LettuceConnectionFactory redisConnectionFactory() {
         RedisClusterConfiguration config = new RedisClusterConfiguration();
         redisProperties.getCluster().getNodes().forEach(s -> config.addClusterNode(RedisNode.fromString(s)));
         config.setMaxRedirects(redisProperties.getCluster().getMaxRedirects());
+        config.setUsername(redisProperties.getUsername());
         config.setPassword(RedisPassword.of(redisProperties.getPassword()));
 
         var clientResources = ClientResources.builder()
@@ -132,15 +147,35 @@ protected LettuceConnectionFactory redisConnectionFactory() {
                 // the DNSNameResolveBuilder respects the TTL the server sends
                 .build();
 
-        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+        var clientConfigBuilder = LettuceClientConfiguration.builder()
                 // this timeout affects all redis commands issued
                 // this is mainly used to when retrieving results, as we wait this time max for the result to arrive
                 .commandTimeout(redisCommandTimeout)
                 .readFrom(ReadFrom.REPLICA_PREFERRED)
                 .clientResources(clientResources)
-                .clientOptions(clusterClientOptions)
-                .build();
-        return new LettuceConnectionFactory(config, clientConfig);
+                .clientOptions(clusterClientOptions);
+        // tls with the jvm's default trust store, TenantRouter builds its clients from the same settings
+        if (redisProperties.getSsl().isEnabled())
+            clientConfigBuilder.useSsl();
+        return new LettuceConnectionFactory(config, clientConfigBuilder.build());
+    }
+
+    @Bean(destroyMethod = "close")
+    public StatefulRedisClusterConnection<String, BinaryData> binaryDataConnection(final LettuceConnectionFactory redisConnectionFactory) {
+        // dedicated native connection for binary hash values
+        // spring data always converts through heap byte[], this one en-/decodes directly on lettuce's netty buffers
+        var client = (RedisClusterClient) redisConnectionFactory.getRequiredNativeClient();
+        var connection = client.connect(new BinaryDataCodec(playgroundProperties.getSerialization().getBinaryFormat()));
+        connection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+        return connection;
+    }
+
+    @Bean(destroyMethod = "close")
+    public StatefulRedisClusterConnection<byte[], byte[]> pipelineConnection(final LettuceConnectionFactory redisConnectionFactory) {
+        // only used through its per node connections by the PipelineConnectionManager (auto flush disabled there)
+        // must not be shared with anything that relies on auto flush
+        var client = (RedisClusterClient) redisConnectionFactory.getRequiredNativeClient();
+        return client.connect(ByteArrayCodec.INSTANCE);
     }
 
     @Bean
@@ -170,10 +205,21 @@ private void configureRedisTemplate(RedisTemplate<?, ?> template, final RedisCon
     }
 
 
+    @Bean
+    public KryoPool kryoPool() {
+        // the pool is static and shared by all KryoRedisSerializer instances (converters are not spring managed)
+        var kryo = playgroundProperties.getKryo();
+        var pool = KryoRedisSerializer.pool();
+        pool.resize(kryo.getMinIdle(), kryo.getMaxIdle());
+        pool.setWindow(kryo.getWindow());
+        pool.prewarm(kryo.getPrewarm());
+        return pool;
+    }
+
     @Bean
     public RedisCustomConversions redisCustomConversions() {
         return new RedisCustomConversions(Arrays.asList(
-                new BinaryDataToBytesConverter(),
+                new BinaryDataToBytesConverter(playgroundProperties.getSerialization().getBinaryFormat()),
                 new BytesToBinaryDataConverter(),
                 new BinaryDataBase64ToBytesConverter(objectMapper()),
                 new BytesToBinaryDataBase64Converter(objectMapper())));
@@ -182,14 +228,25 @@ public RedisCustomConversions redisCustomConversions() {
     @Bean
     public RedisKeyValueAdapter redisKeyValueAdapter(
             final RedisTemplate<?, ?> redisTemplate,
-            final RedisMappingContext mappingContext) {
-        return new PipelinedRedisKeyValueAdapter(redisTemplate, mappingContext, redisCustomConversions());
+            final RedisMappingContext mappingContext,
+            final BlobStore blobStore) {
+        var adapter = new PipelinedRedisKeyValueAdapter(redisTemplate, mappingContext, redisCustomConversions());
+        adapter.setBatchSize(playgroundProperties.getRepository().getBatchSize());
+        // deleting a value drops its reference to the deduplicated payload (DEDUP)
+        adapter.addReferenceField(mappingContext.getRequiredPersistentEntity(TransactionValue.class).getKeySpace(),
+                "binaryDataDigest", blobStore::releaseAll);
+        var index = playgroundProperties.getIndex();
+        if (index.isCompact()) {
+            adapter.setCompactIndexWriter(new CompactIndexWriter(mappingContext, adapter.getPipelineConverter(),
+                    index.getLowCardinalityPaths(), index.getShards()));
+        }
+        return adapter;
     }
 
     @Bean
     public RedisKeyValueTemplate redisKeyValueTemplate(
-            final RedisTemplate<?, ?> redisTemplate, final RedisMappingContext mappingContext) {
-        var adapter = redisKeyValueAdapter(redisTemplate, mappingContext);
+            final RedisTemplate<?, ?> redisTemplate, final RedisMappingContext mappingContext, final BlobStore blobStore) {
+        var adapter = redisKeyValueAdapter(redisTemplate, mappingContext, blobStore);
         return new RedisKeyValueTemplate(adapter, mappingContext);
     }
 
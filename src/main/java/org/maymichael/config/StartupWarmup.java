@@ -0,0 +1,124 @@
+package org.maymichael.config;
+
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.data.BinaryData;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.util.KryoPool;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisHash;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StopWatch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Initializes everything that is otherwise created lazily on the first request: persistent entity metadata,
+ * converter type information, kryo instances and the connections to every cluster node.
+ * <p>
+ * Application runners complete before spring boot switches the readiness state to ACCEPTING_TRAFFIC, so the first
+ * requests after a (rolling) deploy don't pay for the initialization.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class StartupWarmup implements ApplicationRunner {
+
+    private final PlaygroundProperties playgroundProperties;
+    private final RedisMappingContext redisMappingContext;
+    private final PipelinedRedisKeyValueAdapter redisKeyValueAdapter;
+    private final LettuceConnectionFactory redisConnectionFactory;
+    private final StatefulRedisClusterConnection<String, BinaryData> binaryDataConnection;
+    private final KryoPool kryoPool;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var warmup = playgroundProperties.getWarmup();
+        if (!warmup.isEnabled())
+            return;
+
+        StopWatch sw = new StopWatch("warmup");
+        try {
+            sw.start("mapping");
+            var entities = initializeEntities();
+            sw.stop();
+            sw.start("converter");
+            warmUpConverters();
+            sw.stop();
+            sw.start("connections");
+            var nodes = openConnections();
+            sw.stop();
+            log.info("warmup done - duration={}ms entities={} nodes={} kryo={} steps=\"{}\"", sw.getTotalTimeMillis(),
+                    entities, nodes, kryoPool.stats(), sw.shortSummary());
+        } catch (RuntimeException e) {
+            if (sw.isRunning())
+                sw.stop();
+            if (warmup.isFailOnError())
+                throw e;
+            log.warn("warmup failed, continuing with lazy initialization: ", e);
+        }
+    }
+
+    private int initializeEntities() {
+        // same base package the repositories are scanned from
+        var scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(RedisHash.class));
+        var count = 0;
+        for (var candidate : scanner.findCandidateComponents(ClassUtils.getPackageName(TransactionValue.class))) {
+            var type = ClassUtils.resolveClassName(candidate.getBeanClassName(), getClass().getClassLoader());
+            // builds the entity and all nested entities (BinaryData* etc.) including index definitions
+            redisMappingContext.getRequiredPersistentEntity(type);
+            count++;
+        }
+        return count;
+    }
+
+    private void warmUpConverters() {
+        // one full write/read round trip through both converters, this initializes type information,
+        // property accessors and the custom conversions (and kryo for BinaryData)
+        var sample = TransactionValue.builder()
+                .tid("warmup")
+                .something("warmup")
+                .binaryData(BinaryData.builder().data("warmup".getBytes(StandardCharsets.UTF_8)).build())
+                .build();
+        roundTrip(redisKeyValueAdapter.getConverter(), sample);
+        roundTrip(redisKeyValueAdapter.getPipelineConverter(), sample);
+    }
+
+    private static void roundTrip(RedisConverter converter, TransactionValue sample) {
+        var rdo = new RedisData();
+        converter.write(sample, rdo);
+        var read = converter.read(TransactionValue.class, new RedisData(rdo.getBucket().rawMap()));
+        if (read == null || read.getBinaryData() == null)
+            throw new IllegalStateException("converter round trip failed for " + converter);
+    }
+
+    private int openConnections() {
+        // spring's shared cluster connection: per node connections are opened on first use
+        try (var connection = redisConnectionFactory.getClusterConnection()) {
+            for (var node : connection.clusterGetNodes()) {
+                connection.ping(node);
+            }
+        }
+        // native binary data connection, replicas included since we read from them
+        var partitions = binaryDataConnection.getPartitions();
+        for (var node : partitions) {
+            var pong = binaryDataConnection.getConnection(node.getNodeId()).sync().ping();
+            log.debug("warmup connection validated - node={} uri={} response={}", node.getNodeId(), node.getUri(), pong);
+        }
+        return partitions.size();
+    }
+}
@@ -3,15 +3,29 @@
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.services.ChangeFeed;
 import org.maymichael.services.DataService;
+import org.maymichael.services.KeyspaceTransfer;
+import org.maymichael.services.LoadGenerator;
+import org.maymichael.util.KryoPool;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StopWatch;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -20,6 +34,11 @@
 public class DemoController {
 
     private final DataService dataService;
+    private final LoadGenerator loadGenerator;
+    private final KryoPool kryoPool;
+    private final KeyspaceTransfer keyspaceTransfer;
+    private final ChangeFeed changeFeed;
+    private final PlaygroundProperties playgroundProperties;
 
 
     @PostMapping("/demo1")
@@ -63,9 +82,16 @@ public void saveWithPipeline() {
     }
 
     @PostMapping("/demo4")
-    public void time() {
-        // demo4: run demo1, demo2 and demo3 multiple times and get average time spend
-        // overview of demo 1, demo 2 and demo 3
+    public Mono<LoadGenerator.Report> time(@RequestBody(required = false) LoadGenerator.Profile profile) {
+        // demo4: run a mix of save strategies, serializers, payload sizes and execution modes at a fixed arrival rate
+        // and report throughput and latency percentiles per combination, e.g.
+        // curl -X POST -H 'Content-Type: application/json' http://localhost:8080/demo4 \
+        //   -d '{"strategies":["ADAPTER","PIPELINED_ADAPTER"],"modes":["PLATFORM","VIRTUAL"],"ratePerSecond":10}'
+        // invalid profiles fail while the body is decoded (Profile constructor), which webflux answers with 400
+        var request = profile != null ? profile : new LoadGenerator.Profile(null, null, null, null, null, null, null, null, null);
+        // runs for minutes, keep it off the event loop
+        return Mono.fromCallable(() -> loadGenerator.run(request))
+                .subscribeOn(Schedulers.boundedElastic());
     }
 
     @PostMapping("/demo5")
@@ -100,6 +126,106 @@ public ResponseEntity<HttpStatus> demo8(@RequestParam(value = "numItems", defaul
         }
     }
 
+    @PostMapping("/demo11")
+    public Mono<ResponseEntity<HttpStatus>> demo11(@RequestParam(value = "numItems", defaultValue = "10") int items,
+                                                   @RequestParam(value = "strategy", defaultValue = "NODE_PIPELINES") DataService.SaveStrategy strategy,
+                                                   @RequestParam(value = "serializer", defaultValue = "KRYO") DataService.SerializerType serializer) {
+        // same as demo8, but through the async api: no thread waits while the phases run
+        if (items < 0) return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        return Mono.fromFuture(() -> dataService.saveBigDataAsync(items, strategy, serializer))
+                .thenReturn(new ResponseEntity<HttpStatus>(HttpStatus.OK))
+                .onErrorResume(e -> {
+                    log.error("request failed: ", e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+                });
+    }
+
+    @PostMapping("/tenants/{tenant}/save")
+    public Mono<ResponseEntity<List<String>>> saveForTenant(@PathVariable("tenant") String tenant,
+                                                            @RequestParam(value = "tid", required = false) String tid,
+                                                            @RequestParam(value = "numItems", defaultValue = "10") int items,
+                                                            @RequestParam(value = "serializer", defaultValue = "KRYO") DataService.SerializerType serializer) {
+        // saves on the tenant's own connections and node pipelines, returns the value ids, e.g.
+        // curl -X POST 'http://localhost:8080/tenants/tenant-a/save?tid=t1&numItems=100'
+        if (items < 0) return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        var transactionId = tid != null ? tid : UUID.randomUUID().toString();
+        return Mono.fromFuture(() -> dataService.saveDataForTenant(tenant, transactionId, items, serializer))
+                .map(values -> ResponseEntity.ok(values.stream().map(TransactionValue::getId).toList()))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    @GetMapping("/tenants/{tenant}/values/{tid}")
+    public Mono<ResponseEntity<List<String>>> valuesForTenant(@PathVariable("tenant") String tenant, @PathVariable("tid") String tid) {
+        // ids of the values the tenant saved for the tid
+        return Mono.fromFuture(() -> dataService.getDataForTenant(tenant, tid))
+                .map(values -> ResponseEntity.ok(values.stream().map(TransactionValue::getId).toList()))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ChangeFeed.Event> changes(@RequestParam(value = "group", defaultValue = "demo") String group,
+                                          @RequestParam(value = "consumer", defaultValue = "demo-1") String consumer) {
+        // push the change feed to the client as server sent events, e.g.
+        // curl -N 'http://localhost:8080/changes?group=importer&consumer=importer-1'
+        // events are acknowledged once handed to the sink, delivery to the http client is best effort
+        return Flux.create(sink -> {
+            var subscription = changeFeed.subscribe(group, consumer, events -> events.forEach(sink::next));
+            sink.onDispose(() -> {
+                try {
+                    subscription.close();
+                } catch (Exception e) {
+                    log.warn("closing change feed subscription failed: ", e);
+                }
+            });
+        });
+    }
+
+    @PostMapping("/export")
+    public Mono<KeyspaceTransfer.Report> export(@RequestParam(value = "keyspaces", required = false) List<String> keyspaces,
+                                                @RequestParam(value = "mode", defaultValue = "DUMP") KeyspaceTransfer.Mode mode,
+                                                @RequestParam(value = "directory", required = false) String directory) {
+        // snapshot keyspaces (default: all entity keyspaces) into one file per primary, e.g.
+        // curl -X POST 'http://localhost:8080/export?keyspaces=value,transaction&mode=PORTABLE'
+        var target = transferDirectory(directory);
+        if (target == null)
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "directory outside of the transfer directory"));
+        return Mono.fromCallable(() -> keyspaceTransfer.export(keyspaces != null ? keyspaces : List.of(), mode, target))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @PostMapping("/import")
+    public Mono<KeyspaceTransfer.Report> importKeyspaces(@RequestParam(value = "directory", required = false) String directory) {
+        // load every export file of the directory into the connected cluster, existing keys are replaced
+        var source = transferDirectory(directory);
+        if (source == null)
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "directory outside of the transfer directory"));
+        return Mono.fromCallable(() -> keyspaceTransfer.importAll(source))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param directory relative to {@code playground.transfer.directory}, the root itself if {@literal null}
+     * @return {@literal null} if it points outside of the root
+     */
+    private Path transferDirectory(String directory) {
+        var root = Path.of(playgroundProperties.getTransfer().getDirectory()).toAbsolutePath().normalize();
+        if (directory == null)
+            return root;
+        try {
+            var resolved = root.resolve(directory).normalize();
+            // resolve() returns absolute arguments as is, startsWith catches those and any ../
+            return resolved.startsWith(root) ? resolved : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    @GetMapping("/stats/kryo")
+    public KryoPool.Stats kryoPoolStats() {
+        // hit/miss/creation counters of the shared kryo pool
+        return kryoPool.stats();
+    }
+
     private static final int DEMO_MEASUREMENT_SAMPLE_SIZE = 50;
     private static final int DEMO_MEASUREMENT_ATTEMPTS = 10;
 
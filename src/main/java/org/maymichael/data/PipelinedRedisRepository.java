@@ -0,0 +1,91 @@
+package org.maymichael.data;
+
+import org.springframework.data.keyvalue.core.KeyValueOperations;
+import org.springframework.data.keyvalue.core.mapping.KeyValuePersistentEntity;
+import org.springframework.data.keyvalue.repository.support.SimpleKeyValueRepository;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.data.repository.core.EntityInformation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Repository base class (see {@code @EnableRedisRepositories(repositoryBaseClass = ...)}) that runs the bulk
+ * operations as slot grouped pipelines through {@link PipelinedRedisKeyValueAdapter}, instead of one round trip
+ * per entity. Single entity operations and queries stay with spring data.
+ * <p>
+ * Note: unlike the single entity operations, the bulk operations don't publish keyspace/application events.
+ * {@link #findAllById(Iterable)} returns the entities in the order of the ids, missing ones are skipped.
+ */
+public class PipelinedRedisRepository<T, ID> extends SimpleKeyValueRepository<T, ID> {
+
+    private final EntityInformation<T, ID> entityInformation;
+    private final KeyValueOperations operations;
+
+    public PipelinedRedisRepository(EntityInformation<T, ID> metadata, KeyValueOperations operations) {
+        super(metadata, operations);
+        this.entityInformation = metadata;
+        this.operations = operations;
+    }
+
+    private String keyspace() {
+        var entity = (KeyValuePersistentEntity<?, ?>) operations.getMappingContext()
+                .getRequiredPersistentEntity(entityInformation.getJavaType());
+        return entity.getKeySpace();
+    }
+
+    @Override
+    public <S extends T> List<S> saveAll(Iterable<S> entities) {
+        var result = new ArrayList<S>();
+        var byId = new LinkedHashMap<Object, Object>();
+        for (S entity : entities) {
+            var id = entityInformation.getId(entity);
+            if (id == null) {
+                // let spring generate the id
+                result.add(save(entity));
+                continue;
+            }
+            byId.put(id, entity);
+            result.add(entity);
+        }
+        if (!byId.isEmpty()) {
+            operations.execute(adapter -> {
+                ((PipelinedRedisKeyValueAdapter) adapter).putAll(byId);
+                return null;
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public List<T> findAllById(Iterable<ID> ids) {
+        var idList = new ArrayList<ID>();
+        ids.forEach(idList::add);
+        if (idList.isEmpty())
+            return List.of();
+        var keyspace = keyspace();
+        return operations.execute(adapter ->
+                ((PipelinedRedisKeyValueAdapter) adapter).getAll(idList, keyspace, entityInformation.getJavaType()));
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends ID> ids) {
+        var idList = new ArrayList<Object>();
+        ids.forEach(idList::add);
+        if (idList.isEmpty())
+            return;
+        var keyspace = keyspace();
+        operations.execute(adapter -> {
+            ((PipelinedRedisKeyValueAdapter) adapter).deleteAll(idList, keyspace);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        var ids = new ArrayList<ID>();
+        entities.forEach(entity -> ids.add(entityInformation.getRequiredId(entity)));
+        deleteAllById(ids);
+    }
+}
@@ -26,4 +26,7 @@ public class TransactionValue {
     private BinaryData binaryData;
     private BinaryDataRaw binaryDataRaw;
     private BinaryDataBase64 binaryDataBase64;
+
+    // sha-256 of the payload, if it is stored deduplicated in the BlobStore instead of in binaryData
+    private String binaryDataDigest;
 }
@@ -0,0 +1,130 @@
+package org.maymichael.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.util.AimdLimit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits large writes into several pipelines instead of a single one, bounded by item count and a byte budget.
+ * <p>
+ * The byte budget adapts to the cluster ({@link AimdLimit}): it grows while pipelines complete within the target
+ * latency and halves as soon as one doesn't, so big imports run at full speed without buffering hundreds of
+ * megabytes on the client or in a node's client output buffer. The budget is shared by all callers.
+ * <p>
+ * The bytes of all pipelines in flight are capped as well ({@code max-in-flight-bytes}), callers block before
+ * flushing while above it. The cap is global, not per node like the node pipelines': a pipeline spans all nodes its
+ * keys hash to, it's only known which ones after the connection split it up.
+ */
+@Slf4j
+@Service
+public class AdaptivePipelineBatcher {
+
+    private final RedisTemplate<?, ?> redisTemplate;
+    private final int maxItems;
+    private final AimdLimit byteBudget;
+    private final int maxInFlightKib;
+    private final Semaphore inFlight;
+
+    public AdaptivePipelineBatcher(RedisTemplate<?, ?> redisTemplate, PlaygroundProperties playgroundProperties) {
+        var adaptive = playgroundProperties.getPipeline().getAdaptive();
+        this.redisTemplate = redisTemplate;
+        this.maxItems = adaptive.getMaxItems();
+        this.byteBudget = new AimdLimit(adaptive.getMinBytes().toBytes(), adaptive.getMaxBytes().toBytes(),
+                adaptive.getInitialBytes().toBytes(), adaptive.getIncreaseStep().toBytes(),
+                adaptive.getTargetLatency().toNanos());
+        this.maxInFlightKib = (int) Math.clamp(adaptive.getMaxInFlightBytes().toBytes() / 1024, 1, Integer.MAX_VALUE);
+        this.inFlight = new Semaphore(maxInFlightKib);
+    }
+
+    public long currentByteBudget() {
+        return byteBudget.current();
+    }
+
+    /**
+     * Prepares every item (e.g. converts it, on the calling thread, right before its pipeline), then writes it
+     * to the pipeline. Items are written in order, one pipeline at a time.
+     *
+     * @param prepare converts an item into what is written, done lazily so only one batch is held in memory
+     * @param sizeOf  bytes a prepared item puts on the wire
+     * @param write   writes a prepared item to the pipeline connection
+     */
+    public <T, P> void execute(Iterable<T> items, Function<T, P> prepare, ToLongFunction<P> sizeOf,
+                               BiConsumer<RedisConnection, P> write) {
+        execute(items, prepare, sizeOf, write, null);
+    }
+
+    /**
+     * Same as {@link #execute(Iterable, Function, ToLongFunction, BiConsumer)}, with a follow-up per pipeline.
+     *
+     * @param acknowledged called with the items of a completed pipeline, the returned writes go into the next
+     *                     pipeline (or an extra one at the end), e.g. events that must not be visible before the data.
+     *                     The list is reused afterwards, take what's needed right away
+     */
+    public <T, P> void execute(Iterable<T> items, Function<T, P> prepare, ToLongFunction<P> sizeOf,
+                               BiConsumer<RedisConnection, P> write,
+                               @Nullable Function<List<P>, Consumer<RedisConnection>> acknowledged) {
+        Iterator<T> iterator = items.iterator();
+        var batch = new ArrayList<P>();
+        Consumer<RedisConnection> followUp = null;
+        var pipelines = 0;
+        while (iterator.hasNext()) {
+            var budget = byteBudget.current();
+            var bytes = 0L;
+            // at least one item per pipeline, even if it's bigger than the budget on its own
+            while (iterator.hasNext() && batch.size() < maxItems && (batch.isEmpty() || bytes < budget)) {
+                var prepared = prepare.apply(iterator.next());
+                bytes += sizeOf.applyAsLong(prepared);
+                batch.add(prepared);
+            }
+            var saturated = bytes >= budget || batch.size() >= maxItems;
+            var latency = flush(followUp, batch, bytes, write);
+            followUp = acknowledged != null ? acknowledged.apply(batch) : null;
+            byteBudget.onSample(latency, saturated);
+            log.debug("pipeline flushed - items={} bytes={} budget={} latency={}ms", batch.size(), bytes, budget,
+                    latency / 1_000_000);
+            batch.clear();
+            pipelines++;
+        }
+        if (followUp != null)
+            flush(followUp, List.of(), 0, write);
+        log.debug("adaptive pipelines done - pipelines={} budget={}", pipelines, byteBudget.current());
+    }
+
+    /**
+     * @return latency of the pipeline, without the time spent waiting for in-flight bytes
+     */
+    private <P> long flush(@Nullable Consumer<RedisConnection> followUp, List<P> batch, long bytes,
+                           BiConsumer<RedisConnection, P> write) {
+        // a single pipeline above the limit takes all permits instead of waiting forever
+        var permits = (int) Math.min(maxInFlightKib, (bytes + 1023) / 1024);
+        if (permits > 0)
+            inFlight.acquireUninterruptibly(permits);
+        try {
+            var start = System.nanoTime();
+            redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                if (followUp != null)
+                    followUp.accept(connection);
+                batch.forEach(prepared -> write.accept(connection, prepared));
+                return null;
+            });
+            return System.nanoTime() - start;
+        } finally {
+            if (permits > 0)
+                inFlight.release(permits);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.maymichael.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.data.BinaryData;
+import org.maymichael.data.TransactionValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content addressed storage for binary payloads.
+ * <p>
+ * Every distinct payload is stored once under {@code blob:{<sha256>}} with a reference counter at
+ * {@code blob:{<sha256>}:refs} (same hash tag, so both live in the same slot). Entities only keep the digest
+ * ({@link TransactionValue#getBinaryDataDigest()}), and readers resolve digests in batches.
+ * <p>
+ * References are only ever added while the blob exists and blobs are deleted together with their counter once it
+ * drops to zero, both in scripts, so a concurrent release can't delete a blob a writer just referenced. Every stored
+ * value owns one reference: writers take it with {@link #storeAll(List)}, deleting or overwriting the value releases
+ * it (see {@code RedisConfig}, {@link PipelinedRedisKeyValueAdapter#addReferenceField}). Values with a digest must not
+ * expire, an expired hash would never release its reference.
+ */
+@Slf4j
+@Service
+public class BlobStore {
+
+    /**
+     * Prefix of all blob keys, {@code blob:{<sha256>}} and {@code blob:{<sha256>}:refs}.
+     */
+    public static final String KEYSPACE = "blob";
+
+    private static final String KEY_PREFIX = KEYSPACE + ":{";
+    private static final String KEY_SUFFIX = "}";
+    private static final String REFS_SUFFIX = "}:refs";
+
+    // KEYS[1] = blob, KEYS[2] = refs, ARGV[1] = references, ARGV[2] = payload (optional)
+    // returns 0 if the blob is missing and no payload was given, nothing is counted then
+    private static final byte[] REFERENCE = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                if ARGV[2] == nil then
+                    return 0
+                end
+                redis.call('SET', KEYS[1], ARGV[2])
+            end
+            redis.call('INCRBY', KEYS[2], ARGV[1])
+            return 1
+            """.getBytes(StandardCharsets.UTF_8);
+
+    // KEYS[1] = blob, KEYS[2] = refs, ARGV[1] = references
+    private static final byte[] RELEASE = """
+            local count = redis.call('DECRBY', KEYS[2], ARGV[1])
+            if count <= 0 then
+                redis.call('DEL', KEYS[1], KEYS[2])
+            end
+            return count
+            """.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @param digests  digest per payload, in the order of the payloads
+     * @param payloads one payload per digest
+     * @param counts   references per digest, the same payload may be in the list multiple times
+     */
+    public record References(List<String> digests, Map<String, byte[]> payloads, Map<String, Long> counts) {
+    }
+
+    @Autowired
+    private RedisTemplate<?, ?> redisTemplate;
+
+    public static String digest(byte[] payload) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm has to support sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] blobKey(String digest) {
+        return (KEY_PREFIX + digest + KEY_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] refsKey(String digest) {
+        return (KEY_PREFIX + digest + REFS_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static References references(List<byte[]> payloads) {
+        var digests = new ArrayList<String>(payloads.size());
+        var unique = new LinkedHashMap<String, byte[]>();
+        for (var payload : payloads) {
+            var digest = digest(payload);
+            digests.add(digest);
+            unique.putIfAbsent(digest, payload);
+        }
+        return new References(digests, unique, countReferences(digests));
+    }
+
+    /**
+     * @return number of occurrences per digest, in order of their first occurrence
+     */
+    public static Map<String, Long> countReferences(Collection<String> digests) {
+        var counts = new LinkedHashMap<String, Long>();
+        digests.forEach(digest -> counts.merge(digest, 1L, Long::sum));
+        return counts;
+    }
+
+    /**
+     * Stores the payloads (one reference per list entry) and returns their digests in the same order.
+     * Payloads that already exist are not uploaded again.
+     */
+    public List<String> storeAll(List<byte[]> payloads) {
+        var references = references(payloads);
+        var counts = references.counts();
+
+        // 1. reference the blobs we already have (one pipeline, no payload bytes on the wire)
+        var uniqueDigests = new ArrayList<>(counts.keySet());
+        var referenced = redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            uniqueDigests.forEach(digest -> connection.scriptingCommands().eval(REFERENCE, ReturnType.INTEGER, 2,
+                    blobKey(digest), refsKey(digest), toBytes(counts.get(digest))));
+            return null;
+        });
+
+        // 2. upload the missing ones, the script only sets the blob if a concurrent writer didn't
+        var uploads = new ArrayList<String>();
+        for (int i = 0; i < uniqueDigests.size(); i++) {
+            if (!Long.valueOf(1).equals(referenced.get(i)))
+                uploads.add(uniqueDigests.get(i));
+        }
+        if (!uploads.isEmpty()) {
+            redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+                uploads.forEach(digest -> connection.scriptingCommands().eval(REFERENCE, ReturnType.INTEGER, 2,
+                        blobKey(digest), refsKey(digest), toBytes(counts.get(digest)), references.payloads().get(digest)));
+                return null;
+            });
+        }
+        log.debug("blobs stored - references={} unique={} uploaded={}", references.digests().size(), counts.size(), uploads.size());
+        return references.digests();
+    }
+
+    private static byte[] toBytes(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the payloads for the given digests in one pipeline. Missing blobs are not part of the result.
+     */
+    public Map<String, byte[]> loadAll(Collection<String> digests) {
+        var unique = new ArrayList<>(new LinkedHashSet<>(digests));
+        if (unique.isEmpty())
+            return Map.of();
+        var results = redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            unique.forEach(digest -> connection.stringCommands().get(blobKey(digest)));
+            return null;
+        }, RedisSerializer.byteArray());
+        var blobs = new HashMap<String, byte[]>(unique.size() * 2);
+        for (int i = 0; i < unique.size(); i++) {
+            if (results.get(i) instanceof byte[] payload)
+                blobs.put(unique.get(i), payload);
+        }
+        return blobs;
+    }
+
+    /**
+     * Fills {@link TransactionValue#getBinaryData()} for all values that only reference a blob.
+     */
+    public <T extends Collection<TransactionValue>> T resolve(T values) {
+        var digests = values.stream()
+                .filter(tv -> tv.getBinaryData() == null && tv.getBinaryDataDigest() != null)
+                .map(TransactionValue::getBinaryDataDigest)
+                .toList();
+        if (digests.isEmpty())
+            return values;
+        var blobs = loadAll(digests);
+        values.forEach(tv -> {
+            if (tv.getBinaryData() != null || tv.getBinaryDataDigest() == null)
+                return;
+            var payload = blobs.get(tv.getBinaryDataDigest());
+            if (payload == null) {
+                log.warn("referenced blob missing - digest={} id={}", tv.getBinaryDataDigest(), tv.getId());
+                return;
+            }
+            tv.setBinaryData(BinaryData.builder().id(tv.getBinaryDataDigest()).data(payload).build());
+        });
+        return values;
+    }
+
+    /**
+     * Drops one reference per digest, blobs without references are deleted.
+     */
+    public void releaseAll(Collection<String> digests) {
+        var counts = countReferences(digests);
+        if (counts.isEmpty())
+            return;
+        // decrement and delete in one script, a writer can't reference the blob in between
+        redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            counts.forEach((digest, count) -> connection.scriptingCommands().eval(RELEASE, ReturnType.INTEGER, 2,
+                    blobKey(digest), refsKey(digest), toBytes(count)));
+            return null;
+        });
+        log.debug("blobs released - references={} unique={}", digests.size(), counts.size());
+    }
+}
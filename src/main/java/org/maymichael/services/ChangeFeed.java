@@ -0,0 +1,203 @@
+package org.maymichael.services;
+
+import io.lettuce.core.Consumer;
+import io.lettuce.core.RedisBusyException;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XGroupCreateArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Change feed of written transaction values, so consumers get pushed what landed instead of polling
+ * {@code findAllByTid}.
+ * <p>
+ * Every write appends one compact event per batch (tid, value ids, payload bytes) to one of {@code shards} streams
+ * {@code <prefix>:{n}}, chosen by tid, so the events of a transaction stay in order and the streams spread over the
+ * cluster. Events are only written once the values are acknowledged, a consumer never sees ids it can't read yet.
+ * A save is one batch, except with the pipelined adapter: one event per pipeline it was split into, so a tid can have
+ * several events. {@code bytes} is always the raw payload size of the event's values (before serialization).
+ * <p>
+ * Consumers use consumer groups ({@link #subscribe}), one blocking reader per shard on its own connection, events are
+ * acknowledged in batches after the handler returned. Failed batches stay pending and are delivered again after a
+ * pause, or on the next subscribe of the same consumer.
+ */
+@Slf4j
+@Service
+public class ChangeFeed implements DisposableBean {
+
+    public record Event(String stream, String streamId, String tid, List<String> ids, long bytes) {
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(List<Event> events) throws Exception;
+    }
+
+    private static final String FIELD_TID = "tid";
+    private static final String FIELD_IDS = "ids";
+    private static final String FIELD_BYTES = "bytes";
+    private static final String ID_SEPARATOR = ",";
+
+    private final PlaygroundProperties.ChangeFeed properties;
+    private final LettuceConnectionFactory connectionFactory;
+    private final PipelineConnectionManager pipelineConnectionManager;
+    private final ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ChangeFeed(PlaygroundProperties playgroundProperties, LettuceConnectionFactory connectionFactory,
+                      PipelineConnectionManager pipelineConnectionManager) {
+        this.properties = playgroundProperties.getChangeFeed();
+        this.connectionFactory = connectionFactory;
+        this.pipelineConnectionManager = pipelineConnectionManager;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    private String streamKey(int shard) {
+        // hash tag: the whole stream lives in one slot, independent of the prefix
+        return properties.getStreamPrefix() + ":{" + shard + "}";
+    }
+
+    private String streamKey(String tid) {
+        return streamKey(Math.floorMod(tid.hashCode(), properties.getShards()));
+    }
+
+    private static Map<String, String> fields(String tid, Collection<String> ids, long bytes) {
+        return Map.of(FIELD_TID, tid, FIELD_IDS, String.join(ID_SEPARATOR, ids), FIELD_BYTES, Long.toString(bytes));
+    }
+
+    /**
+     * Appends the event to a spring pipeline/connection, e.g. the next pipeline after the values were acknowledged.
+     */
+    public void append(RedisConnection connection, String tid, Collection<String> ids, long bytes) {
+        var raw = new HashMap<byte[], byte[]>();
+        fields(tid, ids, bytes).forEach((field, value) ->
+                raw.put(field.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)));
+        var record = StreamRecords.rawBytes(raw).withStreamKey(streamKey(tid).getBytes(StandardCharsets.UTF_8));
+        connection.streamCommands().xAdd(record, RedisStreamCommands.XAddOptions.maxlen(properties.getMaxLength()).approximateTrimming(true));
+    }
+
+    /**
+     * Appends the event through the node pipelines.
+     */
+    public CompletableFuture<String> publish(String tid, Collection<String> ids, long bytes) {
+        var key = streamKey(tid).getBytes(StandardCharsets.UTF_8);
+        var body = new HashMap<byte[], byte[]>();
+        fields(tid, ids, bytes).forEach((field, value) ->
+                body.put(field.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)));
+        var args = XAddArgs.Builder.maxlen(properties.getMaxLength()).approximateTrimming();
+        return pipelineConnectionManager.submit(key, commands -> commands.xadd(key, args, body))
+                .thenApply(id -> new String(id, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Starts one reader per shard for the consumer (group is created if missing, starting at new events).
+     * Close the returned subscription to stop reading, events that were not acknowledged yet stay pending.
+     */
+    public AutoCloseable subscribe(String group, String consumer, Handler handler) {
+        var running = new AtomicBoolean(true);
+        var connections = new ArrayList<StatefulRedisClusterConnection<String, String>>();
+        var client = (RedisClusterClient) connectionFactory.getRequiredNativeClient();
+        for (int shard = 0; shard < properties.getShards(); shard++) {
+            var key = streamKey(shard);
+            // blocking reads hold the node connection, so every shard gets its own
+            var connection = client.connect(StringCodec.UTF8);
+            connections.add(connection);
+            readers.execute(() -> readShard(connection.sync(), key, group, consumer, handler, running));
+        }
+        return () -> {
+            running.set(false);
+            // interrupts blocked reads
+            connections.forEach(StatefulRedisClusterConnection::close);
+        };
+    }
+
+    /**
+     * Reads the shard until {@code running} is cleared: pending events first, then new ones. Events are acknowledged
+     * after the handler returned, if it throws they are delivered again (from the pending list) after a pause.
+     */
+    void readShard(RedisClusterCommands<String, String> commands, String key, String group,
+                   String consumer, Handler handler, AtomicBoolean running) {
+        try {
+            commands.xgroupCreate(XReadArgs.StreamOffset.from(key, "$"), group, XGroupCreateArgs.Builder.mkstream());
+        } catch (RedisBusyException e) {
+            // BUSYGROUP, group exists already
+        }
+        var from = Consumer.from(group, consumer);
+        // first whatever this consumer got delivered but never acknowledged, then new events
+        var offset = XReadArgs.StreamOffset.from(key, "0");
+        while (running.get()) {
+            try {
+                var args = XReadArgs.Builder.count(properties.getReadCount()).block(properties.getBlock());
+                var messages = commands.xreadgroup(from, args, offset);
+                if (messages.isEmpty()) {
+                    offset = XReadArgs.StreamOffset.lastConsumed(key);
+                    continue;
+                }
+                var events = toEvents(messages);
+                if (!events.isEmpty())
+                    handler.handle(events);
+                // deleted (trimmed) entries are acknowledged too, otherwise they are delivered again forever
+                commands.xack(key, group, messages.stream().map(StreamMessage::getId).toArray(String[]::new));
+            } catch (Exception e) {
+                if (!running.get())
+                    break;
+                log.warn("change feed read failed - stream={} group={} consumer={}: ", key, group, consumer, e);
+                // re-deliver the pending events on the next round, after a pause
+                offset = XReadArgs.StreamOffset.from(key, "0");
+                LockSupport.parkNanos(properties.getBlock().toNanos());
+            }
+        }
+        log.info("change feed reader stopped - stream={} group={} consumer={}", key, group, consumer);
+    }
+
+    /**
+     * @return the events of the messages, without entries that were deleted (MAXLEN trimmed) while pending,
+     * those are delivered without a body
+     */
+    public static List<Event> toEvents(List<StreamMessage<String, String>> messages) {
+        var events = new ArrayList<Event>(messages.size());
+        for (var message : messages) {
+            if (message.getBody() == null || message.getBody().isEmpty()) {
+                log.debug("skipping deleted change feed entry - stream={} id={}", message.getStream(), message.getId());
+                continue;
+            }
+            events.add(toEvent(message));
+        }
+        return events;
+    }
+
+    private static Event toEvent(StreamMessage<String, String> message) {
+        var body = message.getBody();
+        var ids = body.getOrDefault(FIELD_IDS, "");
+        return new Event(message.getStream(), message.getId(), body.get(FIELD_TID),
+                ids.isEmpty() ? List.of() : List.of(ids.split(ID_SEPARATOR)),
+                Long.parseLong(body.getOrDefault(FIELD_BYTES, "0")));
+    }
+
+    @Override
+    public void destroy() {
+        readers.shutdownNow();
+    }
+}
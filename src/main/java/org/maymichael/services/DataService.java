@@ -1,33 +1,46 @@
 package org.maymichael.services;
 
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.maymichael.data.*;
+import org.maymichael.util.SingleFlight;
 import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.mapping.RedisMappingContext;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StopWatch;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @Service
-public class DataService {
+public class DataService implements DisposableBean {
 
     public enum SaveStrategy {
         CRUD,
         ADAPTER,
         PIPELINED_ADAPTER,
+        // long-lived per node pipelines, can be fed from many threads
+        NODE_PIPELINES,
     }
 
     public enum SerializerType {
         RAW,
         KRYO,
         BASE64,
+        // payload stored once per content in the BlobStore, the value only keeps the digest
+        DEDUP,
     }
 
     @Autowired
@@ -52,12 +65,47 @@ public enum SerializerType {
     @Autowired
     private RedisMappingContext redisMappingContext;
 
+    @Autowired
+    private StatefulRedisClusterConnection<String, BinaryData> binaryDataConnection;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private PipelineConnectionManager pipelineConnectionManager;
+
+    @Autowired
+    private AdaptivePipelineBatcher adaptivePipelineBatcher;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private TenantRouter tenantRouter;
+
+    @Autowired
+    private SessionConsistency sessionConsistency;
+
+    // async callers never block on these, blocking steps (spring pipelines) run here
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // concurrent reads of the same tid share one fetch (hot transactions), per read path
+    private final SingleFlight<String, List<TransactionValue>> valueReads = new SingleFlight<>();
+    private final SingleFlight<String, List<TransactionValue>> asyncValueReads = new SingleFlight<>();
+
+    // hash field spring data uses for TransactionValue.binaryData (converted with BinaryDataToBytesConverter)
+    private static final String BINARY_DATA_FIELD = "binaryData";
+
     private String resolveKeySpace(Class<?> type) {
         return redisMappingContext.getRequiredPersistentEntity(type).getKeySpace();
     }
 
     private List<byte[]> dataSet;
 
+    /**
+     * @return the first {@code size} payloads of the shared data set, as a snapshot (the data set keeps growing and
+     * is cleared by other requests)
+     */
     public List<byte[]> createDataSet(int size) {
         synchronized (this) {
             if (dataSet == null) {
@@ -70,7 +118,7 @@ public List<byte[]> createDataSet(int size) {
                     dataSet.add(bd);
                 }
             }
-            return dataSet;
+            return List.copyOf(dataSet.subList(0, size));
         }
     }
 
@@ -85,30 +133,30 @@ private String buildRedisQuery(Class<?> clazz, String query) {
     }
 
     public List<TransactionValue> saveData(String tid, int numItems, SaveStrategy strategy, SerializerType serializerType) {
-        var tvList = new ArrayList<TransactionValue>();
-        var totalSize = 0;
         StopWatch sw = new StopWatch();
         sw.start("create dataset");
         var binaryDataSet = createDataSet(numItems);
         sw.stop();
         log.info("data set creation time: duration={}ms id={}", sw.lastTaskInfo().getTimeMillis(), tid);
-        for (int i = 0; i < numItems; i++) {
-            var something = i % 2 == 0 ? "even" : "odd";
-            var bd = binaryDataSet.get(i);
-            var tv = TransactionValue.builder()
-                    .tid(tid)
-                    .something(something)
-                    .binaryData(serializerType == SerializerType.KRYO ? BinaryData.builder().data(bd).build() : null)
-                    .binaryDataRaw(serializerType == SerializerType.RAW ? BinaryDataRaw.builder().data(bd).build() : null)
-                    .binaryDataBase64(serializerType == SerializerType.BASE64 ? BinaryDataBase64.builder().data(bd).build() : null)
-                    .build();
-            totalSize += bd.length;
-            tvList.add(tv);
+        return saveData(tid, binaryDataSet, strategy, serializerType);
+    }
+
+    public List<TransactionValue> saveData(String tid, List<byte[]> binaryDataSet, SaveStrategy strategy, SerializerType serializerType) {
+        StopWatch sw = new StopWatch();
+        List<String> digests = null;
+        if (serializerType == SerializerType.DEDUP) {
+            // upload (missing) blobs first, so values never reference a blob that doesn't exist yet
+            sw.start("blobs");
+            digests = blobStore.storeAll(binaryDataSet);
+            sw.stop();
+            log.info("blob store time: duration={}ms id={}", sw.lastTaskInfo().getTimeMillis(), tid);
         }
+        var tvList = buildValues(tid, binaryDataSet, serializerType, digests);
+        var totalSize = binaryDataSet.stream().mapToLong(bd -> bd.length).sum();
         sw.start("save");
         switch (strategy) {
             case CRUD:
-                // crud
+                // crud, saveAll is pipelined by PipelinedRedisRepository (slot grouped batches)
                 transactionValueRepository.saveAll(tvList);
                 break;
             case ADAPTER:
@@ -126,21 +174,71 @@ public List<TransactionValue> saveData(String tid, int numItems, SaveStrategy st
                 // faster the more items are processed
                 // since we reuse the same connection for all items in a pipeline
                 // downside: can only create, updates are not possible
-                redisTemplate.executePipelined((RedisCallback<?>) connection -> {
-                    // can NOT parallelize this, since connection is not thread safe!
-                    tvList.forEach(tv -> {
-                        redisKeyValueAdapter.putOnConnection(connection, tv.getId(), tv);
-                    });
-                    return null;
-                });
+                // split into pipelines by count and (adaptive) byte budget, so big imports don't buffer everything at once
+                // can NOT parallelize the writes, since connection is not thread safe!
+                // change feed events of a pipeline ride along in the next one, once the values are acknowledged
+                // entities are encoded into the same instances pipeline after pipeline
+                var encoder = redisKeyValueAdapter.encoder();
+                // pipelines are written in order, so are the payloads of their values
+                var payloads = binaryDataSet.iterator();
+                Function<List<EncodedEntity>, Consumer<RedisConnection>> acknowledged = written -> {
+                    Consumer<RedisConnection> feedEvent = null;
+                    if (changeFeed.isEnabled()) {
+                        var ids = new ArrayList<String>(written.size());
+                        var bytes = 0L;
+                        for (var entity : written) {
+                            ids.add(entity.getId());
+                            // raw payload bytes like the other strategies, not the encoded hash
+                            bytes += payloads.next().length;
+                        }
+                        var eventBytes = bytes;
+                        feedEvent = connection -> changeFeed.append(connection, tid, ids, eventBytes);
+                    }
+                    encoder.reset();
+                    return feedEvent;
+                };
+                adaptivePipelineBatcher.execute(tvList,
+                        tv -> encoder.encode(tv.getId(), tv),
+                        EncodedEntity::size,
+                        (connection, encoded) -> redisKeyValueAdapter.putOnConnection(connection, encoded.getId(), encoded),
+                        acknowledged);
+                break;
+            case NODE_PIPELINES:
+                // same commands as the pipelined adapter (insert only), but queued per node
+                // the node pipelines are thread safe, so conversion and queueing can run in parallel
+                var batch = pipelineConnectionManager.batch();
+                tvList.parallelStream().forEach(tv -> redisKeyValueAdapter.putOnSink(batch, tv.getId(), tv));
+                batch.completion().join();
                 break;
         }
+        if (changeFeed.isEnabled() && strategy != SaveStrategy.PIPELINED_ADAPTER) {
+            changeFeed.publish(tid, tvList.stream().map(TransactionValue::getId).toList(), totalSize).join();
+        }
         sw.stop();
         log.info("save time: duration={}ms totalData=\"{}\" serializer={} strategy={} id={}", sw.lastTaskInfo().getTimeMillis(),
                 FileUtils.byteCountToDisplaySize(totalSize), serializerType.name(), strategy.name(), tid);
         return tvList;
     }
 
+    private static List<TransactionValue> buildValues(String tid, List<byte[]> binaryDataSet, SerializerType serializerType,
+                                                      List<String> digests) {
+        var tvList = new ArrayList<TransactionValue>(binaryDataSet.size());
+        for (int i = 0; i < binaryDataSet.size(); i++) {
+            var something = i % 2 == 0 ? "even" : "odd";
+            var bd = binaryDataSet.get(i);
+            var tv = TransactionValue.builder()
+                    .tid(tid)
+                    .something(something)
+                    .binaryData(serializerType == SerializerType.KRYO ? BinaryData.builder().data(bd).build() : null)
+                    .binaryDataRaw(serializerType == SerializerType.RAW ? BinaryDataRaw.builder().data(bd).build() : null)
+                    .binaryDataBase64(serializerType == SerializerType.BASE64 ? BinaryDataBase64.builder().data(bd).build() : null)
+                    .binaryDataDigest(digests != null ? digests.get(i) : null)
+                    .build();
+            tvList.add(tv);
+        }
+        return tvList;
+    }
+
     public void saveBigData(int numItems, SaveStrategy strategy, SerializerType serializerType) {
         var t = Transaction.builder().build();
         log.info("saveBigData request received - numItems={} strategy={} id={}", numItems, strategy.name(), t.getId());
@@ -148,12 +246,27 @@ public void saveBigData(int numItems, SaveStrategy strategy, SerializerType seri
         var tvList = saveData(t.getId(), numItems, strategy, serializerType);
         StopWatch sw = new StopWatch();
         sw.start("read");
-        var results = stringRedisTemplate.executePipelined((RedisCallback<?>) con -> {
-            con.setCommands().sMembers(buildRedisQuery(TransactionValue.class, "tid:" + t.getId()).getBytes(StandardCharsets.UTF_8));
-            return null;
-        });
-        assert results.size() == 1;
-        var valuesForTid = getAndCheckData(results, tvList);
+        var indexKey = buildRedisQuery(TransactionValue.class, "tid:" + t.getId()).getBytes(StandardCharsets.UTF_8);
+        Set<String> valuesForTid;
+        if (sessionConsistency.isEnabled()) {
+            // read back from replicas that already have the writes, instead of racing replication
+            var session = writeSession(tvList, indexKey, strategy);
+            var ids = sessionConsistency.read(session, indexKey, commands -> commands.smembers(indexKey));
+            var keyspace = resolveKeySpace(TransactionValue.class);
+            valuesForTid = getAndCheckData(toStrings(ids), tvList, id -> {
+                var key = buildRedisQuery(TransactionValue.class, id).getBytes(StandardCharsets.UTF_8);
+                var hash = sessionConsistency.read(session, key, commands -> commands.hgetall(key));
+                return Optional.ofNullable(redisKeyValueAdapter.readHash(keyspace, id, hash, TransactionValue.class));
+            });
+        } else {
+            var results = stringRedisTemplate.executePipelined((RedisCallback<?>) con -> {
+                con.setCommands().sMembers(indexKey);
+                return null;
+            });
+            assert results.size() == 1;
+            @SuppressWarnings("unchecked") var ids = (Set<String>) results.getFirst();
+            valuesForTid = getAndCheckData(ids, tvList, transactionValueRepository::findById);
+        }
         sw.stop();
         log.info("read time: duration={}ms serializer={} id={}", sw.lastTaskInfo().getTimeMillis(), serializerType.name(), t.getId());
 
@@ -161,15 +274,218 @@ public void saveBigData(int numItems, SaveStrategy strategy, SerializerType seri
         log.info("totalTransactions={} values={} serializer={} id={}", totalTransactions, valuesForTid.size(), serializerType.name(), t.getId());
     }
 
+    /**
+     * Concurrent reads of the same tid are coalesced, a read may join one that started before the caller's last
+     * write of the tid and miss it. Callers reading their own writes use {@link SessionConsistency} instead.
+     *
+     * @return unmodifiable, shared with concurrent readers of the same tid, the values must not be modified
+     */
     public List<TransactionValue> getDataForId(String tid) {
-        return transactionValueRepository.findAllByTid(tid);
+        // values saved with DEDUP only reference their payload, load those in one batch
+        return valueReads.run(tid, () -> List.copyOf(blobStore.resolve(transactionValueRepository.findAllByTid(tid))));
+    }
+
+    /**
+     * Writes only the binary payload of an existing {@link TransactionValue}, encoded directly into lettuce's
+     * pooled buffers (no intermediate heap copies of the serialized value).
+     */
+    public void saveBinaryData(String valueId, BinaryData binaryData) {
+        binaryDataConnection.sync().hset(buildRedisQuery(TransactionValue.class, valueId), BINARY_DATA_FIELD, binaryData);
+    }
+
+    /**
+     * Reads only the binary payload of a {@link TransactionValue}, decoded directly from lettuce's response buffer.
+     */
+    public Optional<BinaryData> getBinaryData(String valueId) {
+        return Optional.ofNullable(binaryDataConnection.sync().hget(buildRedisQuery(TransactionValue.class, valueId), BINARY_DATA_FIELD));
+    }
+
+    /**
+     * Non-blocking variant of {@link #saveData(String, List, SaveStrategy, SerializerType)}. NODE_PIPELINES is
+     * asynchronous end to end (lettuce async commands on the node pipelines), the other strategies are blocking by
+     * nature and run on a virtual thread.
+     */
+    public CompletableFuture<List<TransactionValue>> saveDataAsync(String tid, List<byte[]> binaryDataSet, SaveStrategy strategy, SerializerType serializerType) {
+        if (strategy != SaveStrategy.NODE_PIPELINES)
+            return CompletableFuture.supplyAsync(() -> saveData(tid, binaryDataSet, strategy, serializerType), asyncExecutor);
+        return saveOnNodePipelines(pipelineConnectionManager, "", tid, binaryDataSet, serializerType);
+    }
+
+    /**
+     * Saves values of a tenant ({@link TenantRouter}) on its own node pipelines. The value ids and all indexed values
+     * (tid, something) get the tenant's prefix. The keyspace set ({@code value}, i.e. {@code count()}), blobs (DEDUP)
+     * and the change feed are shared by all tenants.
+     *
+     * @throws IllegalArgumentException (failed future) if the tenant isn't configured
+     */
+    public CompletableFuture<List<TransactionValue>> saveDataForTenant(String tenant, String tid, int numItems, SerializerType serializerType) {
+        return tenantRouter.execute(tenant, context -> saveOnNodePipelines(context.pipelines(), context.prefix(),
+                context.prefix() + tid, createDataSet(numItems), serializerType));
+    }
+
+    /**
+     * Reads the values a tenant saved for {@code tid}, see {@link #saveDataForTenant(String, String, int, SerializerType)}.
+     */
+    public CompletableFuture<List<TransactionValue>> getDataForTenant(String tenant, String tid) {
+        return tenantRouter.execute(tenant, context -> getOnNodePipelines(context.pipelines(), context.prefix() + tid));
+    }
+
+    /**
+     * @param idPrefix prefix of the value ids, empty for the shared keyspace
+     */
+    private CompletableFuture<List<TransactionValue>> saveOnNodePipelines(PipelineConnectionManager pipelines, String idPrefix,
+                                                                          String tid, List<byte[]> binaryDataSet,
+                                                                          SerializerType serializerType) {
+        var digests = serializerType == SerializerType.DEDUP
+                ? CompletableFuture.supplyAsync(() -> blobStore.storeAll(binaryDataSet), asyncExecutor)
+                : CompletableFuture.<List<String>>completedFuture(null);
+        return digests.thenComposeAsync(blobDigests -> {
+            var tvList = buildValues(tid, binaryDataSet, serializerType, blobDigests);
+            // every indexed value too (tid is prefixed by the caller), so no index set is shared with other tenants
+            if (!idPrefix.isEmpty())
+                tvList.forEach(tv -> {
+                    tv.setId(idPrefix + tv.getId());
+                    tv.setSomething(idPrefix + tv.getSomething());
+                });
+            var batch = pipelines.batch();
+            tvList.parallelStream().forEach(tv -> redisKeyValueAdapter.putOnSink(batch, tv.getId(), tv));
+            var saved = batch.completion().thenApply(done -> tvList);
+            if (!changeFeed.isEnabled())
+                return saved;
+            var bytes = binaryDataSet.stream().mapToLong(bd -> bd.length).sum();
+            return saved.thenCompose(values -> changeFeed.publish(tid, values.stream().map(TransactionValue::getId).toList(), bytes)
+                    .thenApply(streamId -> values));
+        }, asyncExecutor);
+    }
+
+    /**
+     * Non-blocking variant of {@link #saveBigData(int, SaveStrategy, SerializerType)}. The transaction record is
+     * written while the values are (on the node pipelines for NODE_PIPELINES, otherwise through the repository like
+     * the blocking variant), verification (one batch of reads) and the count run side by side after that,
+     * so the latency is the one of the slowest phase instead of the sum of all.
+     */
+    public CompletableFuture<Void> saveBigDataAsync(int numItems, SaveStrategy strategy, SerializerType serializerType) {
+        var t = Transaction.builder().build();
+        log.info("saveBigDataAsync request received - numItems={} strategy={} id={}", numItems, strategy.name(), t.getId());
+        var start = System.nanoTime();
+
+        // the transaction record goes the same way as its values
+        CompletableFuture<?> transactionSaved;
+        if (strategy == SaveStrategy.NODE_PIPELINES) {
+            var transactionBatch = pipelineConnectionManager.batch();
+            redisKeyValueAdapter.putOnSink(transactionBatch, t.getId(), t);
+            transactionSaved = transactionBatch.completion();
+        } else {
+            transactionSaved = CompletableFuture.runAsync(() -> transactionRepository.save(t), asyncExecutor);
+        }
+
+        var valuesSaved = saveDataAsync(t.getId(), createDataSet(numItems), strategy, serializerType);
+        // not coalesced, a read that started before our write would fail the verification
+        var verified = valuesSaved.thenCompose(tvList -> getOnNodePipelines(pipelineConnectionManager, t.getId())
+                .thenApply(stored -> verify(t.getId(), tvList, stored)));
+        var totalTransactions = valuesSaved.thenCompose(tvList -> countAsync(TransactionValue.class));
+
+        return CompletableFuture.allOf(transactionSaved, verified, totalTransactions)
+                .thenAccept(done -> log.info("saveBigDataAsync done - duration={}ms totalTransactions={} values={} serializer={} id={}",
+                        (System.nanoTime() - start) / 1_000_000, totalTransactions.join(), verified.join(),
+                        serializerType.name(), t.getId()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getDataForId(String)}: one index read, then all values in one batch on the
+     * node pipelines. Shared with concurrent readers of the same tid as well, with the same caveat: it may miss the
+     * caller's own latest write.
+     */
+    public CompletableFuture<List<TransactionValue>> getDataForIdAsync(String tid) {
+        return asyncValueReads.execute(tid, key -> getOnNodePipelines(pipelineConnectionManager, key)
+                .thenApply(List::copyOf));
+    }
+
+    private CompletableFuture<List<TransactionValue>> getOnNodePipelines(PipelineConnectionManager pipelines, String tid) {
+        var keyspace = resolveKeySpace(TransactionValue.class);
+        var indexKey = buildRedisQuery(TransactionValue.class, "tid:" + tid).getBytes(StandardCharsets.UTF_8);
+        return pipelines.submit(indexKey, commands -> commands.smembers(indexKey))
+                .thenCompose(ids -> {
+                    var reads = new ArrayList<CompletableFuture<TransactionValue>>(ids.size());
+                    for (var rawId : ids) {
+                        var id = new String(rawId, StandardCharsets.UTF_8);
+                        var key = buildRedisQuery(TransactionValue.class, id).getBytes(StandardCharsets.UTF_8);
+                        reads.add(pipelines.submit(key, commands -> commands.hgetall(key))
+                                .thenApply(hash -> redisKeyValueAdapter.readHash(keyspace, id, hash, TransactionValue.class)));
+                    }
+                    return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new))
+                            .thenApply(done -> reads.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+                })
+                // blob lookups are blocking (spring pipeline)
+                .<List<TransactionValue>>thenApplyAsync(values -> blobStore.resolve(new ArrayList<>(values)), asyncExecutor);
     }
 
-    private Set<String> getAndCheckData(List<Object> results, List<TransactionValue> tvList) {
-        @SuppressWarnings("unchecked") var valuesForTid = (Set<String>) results.getFirst();
+    private CompletableFuture<Long> countAsync(Class<?> type) {
+        var keyspace = resolveKeySpace(type).getBytes(StandardCharsets.UTF_8);
+        return pipelineConnectionManager.submit(keyspace, commands -> commands.scard(keyspace));
+    }
 
+    /**
+     * @return number of stored values, mismatches are logged
+     */
+    private int verify(String tid, List<TransactionValue> expected, List<TransactionValue> stored) {
+        var storedById = new HashMap<String, TransactionValue>(stored.size() * 2);
+        stored.forEach(tv -> storedById.put(tv.getId(), tv));
+        var mismatches = 0;
+        for (var tv : expected) {
+            var match = storedById.get(tv.getId());
+            // deduplicated values only carry the digest, the stored one got its payload resolved
+            var equal = match != null && (tv.getBinaryDataDigest() != null
+                    ? tv.getBinaryDataDigest().equals(match.getBinaryDataDigest())
+                    : Arrays.equals(payload(tv), payload(match)));
+            if (!equal) {
+                mismatches++;
+            }
+        }
+        if (mismatches > 0 || stored.size() != expected.size())
+            log.warn("verification failed - expected={} stored={} mismatches={} id={}", expected.size(), stored.size(), mismatches, tid);
+        return stored.size();
+    }
+
+    private static byte[] payload(TransactionValue tv) {
+        if (tv.getBinaryData() != null)
+            return tv.getBinaryData().getData();
+        if (tv.getBinaryDataRaw() != null)
+            return tv.getBinaryDataRaw().getData();
+        if (tv.getBinaryDataBase64() != null)
+            return tv.getBinaryDataBase64().getData();
+        return null;
+    }
+
+    /**
+     * Session of a critical batch: WAITs for the configured number of replicas first (node pipelines only, WAIT
+     * has to run on the connection that wrote), then records the offsets the reads have to see.
+     */
+    private SessionConsistency.Session writeSession(List<TransactionValue> tvList, byte[] indexKey, SaveStrategy strategy) {
+        var keys = new ArrayList<byte[]>(tvList.size() + 1);
+        keys.add(indexKey);
+        tvList.forEach(tv -> keys.add(buildRedisQuery(TransactionValue.class, tv.getId()).getBytes(StandardCharsets.UTF_8)));
+        var replicas = sessionConsistency.getWaitReplicas();
+        if (replicas > 0 && strategy == SaveStrategy.NODE_PIPELINES) {
+            var acknowledged = pipelineConnectionManager.waitForReplicas(keys, replicas, sessionConsistency.getWaitTimeoutMillis()).join();
+            if (acknowledged < replicas)
+                log.warn("replication wait timed out - replicas={} acknowledged={}", replicas, acknowledged);
+        }
+        var session = sessionConsistency.session();
+        sessionConsistency.recordWrites(session, keys);
+        return session;
+    }
+
+    private static Set<String> toStrings(Set<byte[]> ids) {
+        var strings = new HashSet<String>(ids.size() * 2);
+        ids.forEach(id -> strings.add(new String(id, StandardCharsets.UTF_8)));
+        return strings;
+    }
+
+    private Set<String> getAndCheckData(Set<String> valuesForTid, List<TransactionValue> tvList,
+                                        Function<String, Optional<TransactionValue>> reader) {
         valuesForTid.forEach(tvid -> {
-            var tvd = transactionValueRepository.findById(tvid);
+            var tvd = reader.apply(tvid);
             var match = tvList.stream().filter(tv -> Objects.equals(tv.getId(), tvid)).findFirst();
             assert match.isPresent();
             assert tvd.isPresent();
@@ -208,4 +524,10 @@ public void testMassGet() {
         log.info("results={} values={} keys={}", results.size(), valuesForTid.size(), keysForTid.size());
 
     }
+
+    @Override
+    public void destroy() {
+        // waits for running async steps
+        asyncExecutor.close();
+    }
 }
@@ -0,0 +1,294 @@
+package org.maymichael.services;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.ByteArrayCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.util.KeyspaceDumpFormat;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Export and import of whole keyspaces (entity hashes, index sets, ..), e.g. to copy production data into a test
+ * cluster.
+ * <p>
+ * Export runs SCAN on every primary in parallel (never KEYS), reads each batch of keys with pipelined commands and streams
+ * the entries into one {@link KeyspaceDumpFormat} file per node. Import reads all files of a directory in parallel
+ * and writes the entries back in pipelined batches, the target cluster may have a different topology.
+ * <p>
+ * Both use their own connection, so bulk traffic doesn't queue up behind (or in front of) the application's commands.
+ */
+@Slf4j
+@Service
+public class KeyspaceTransfer {
+
+    public enum Mode {
+        // DUMP/RESTORE of every key, exact copy, but only between compatible server versions
+        DUMP,
+        // hashes and sets as plain field/member lists (HGETALL/SMEMBERS), any other type as DUMP
+        PORTABLE,
+    }
+
+    public record FileResult(String file, long keys, long bytes, long skipped) {
+    }
+
+    public record Report(List<FileResult> files, long keys, long bytes, long durationMillis) {
+    }
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisMappingContext mappingContext;
+    private final PlaygroundProperties.Transfer properties;
+
+    public KeyspaceTransfer(LettuceConnectionFactory connectionFactory, RedisMappingContext mappingContext,
+                            PlaygroundProperties playgroundProperties) {
+        this.connectionFactory = connectionFactory;
+        this.mappingContext = mappingContext;
+        this.properties = playgroundProperties.getTransfer();
+    }
+
+    private StatefulRedisClusterConnection<byte[], byte[]> connect() {
+        var client = (RedisClusterClient) connectionFactory.getRequiredNativeClient();
+        return client.connect(ByteArrayCodec.INSTANCE);
+    }
+
+    /**
+     * @param keyspaces keyspaces to export, all entity keyspaces if empty. The blobs ({@link BlobStore#KEYSPACE}) are
+     *                  exported together with the values, DEDUP values only keep the digest of their payload.
+     * @param directory target directory, created if missing, existing files of the same nodes are replaced
+     */
+    public Report export(Collection<String> keyspaces, Mode mode, Path directory) throws IOException {
+        var exported = new TreeSet<>(keyspaces.isEmpty() ? entityKeyspaces() : keyspaces);
+        if (exported.contains(mappingContext.getRequiredPersistentEntity(TransactionValue.class).getKeySpace()))
+            exported.add(BlobStore.KEYSPACE);
+        var prefixes = prefixes(exported);
+        Files.createDirectories(directory);
+        var start = System.nanoTime();
+        try (var connection = connect();
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<FileResult>>();
+            for (RedisClusterNode node : connection.getPartitions()) {
+                if (!node.getRole().isUpstream())
+                    continue;
+                var file = directory.resolve(node.getNodeId() + KeyspaceDumpFormat.FILE_SUFFIX);
+                futures.add(executor.submit(() -> exportNode(connection.getConnection(node.getNodeId()).async(), prefixes, mode, file)));
+            }
+            return report(futures, start);
+        }
+    }
+
+    /**
+     * Imports every {@link KeyspaceDumpFormat#FILE_SUFFIX} file of the directory, existing keys are replaced.
+     */
+    public Report importAll(Path directory) throws IOException {
+        List<Path> files;
+        try (var listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(KeyspaceDumpFormat.FILE_SUFFIX)).toList();
+        }
+        var start = System.nanoTime();
+        try (var connection = connect();
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<FileResult>>();
+            for (var file : files) {
+                futures.add(executor.submit(() -> importFile(connection.async(), file)));
+            }
+            return report(futures, start);
+        }
+    }
+
+    private Set<String> entityKeyspaces() {
+        var keyspaces = new TreeSet<String>();
+        for (RedisPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (entity.getKeySpace() != null)
+                keyspaces.add(entity.getKeySpace());
+        }
+        return keyspaces;
+    }
+
+    // the keyspace set itself ("value") and everything below it ("value:<id>", "value:tid:<tid>", ..)
+    private static List<byte[]> prefixes(Collection<String> keyspaces) {
+        var prefixes = new ArrayList<byte[]>();
+        keyspaces.forEach(keyspace -> prefixes.add(keyspace.getBytes(StandardCharsets.UTF_8)));
+        return prefixes;
+    }
+
+    private static boolean matches(byte[] key, List<byte[]> keyspaces) {
+        for (var keyspace : keyspaces) {
+            if (key.length < keyspace.length || !Arrays.equals(key, 0, keyspace.length, keyspace, 0, keyspace.length))
+                continue;
+            if (key.length == keyspace.length || key[keyspace.length] == ':')
+                return true;
+        }
+        return false;
+    }
+
+    private FileResult exportNode(RedisAsyncCommands<byte[], byte[]> commands, List<byte[]> keyspaces, Mode mode,
+                                  Path file) throws IOException {
+        var keys = 0L;
+        var bytes = 0L;
+        var skipped = 0L;
+        try (var writer = new KeyspaceDumpFormat.Writer(file)) {
+            // a single scan over all keys of the node and filter client side, instead of one MATCH scan per keyspace
+            var args = ScanArgs.Builder.limit(properties.getScanCount());
+            KeyScanCursor<byte[]> cursor = await(commands.scan(args));
+            while (true) {
+                var batch = cursor.getKeys().stream().filter(key -> matches(key, keyspaces)).toList();
+                for (int i = 0; i < batch.size(); i += properties.getBatchSize()) {
+                    var entries = read(commands, batch.subList(i, Math.min(batch.size(), i + properties.getBatchSize())), mode);
+                    for (var entry : entries) {
+                        if (entry == null) {
+                            // expired or deleted since the scan
+                            skipped++;
+                            continue;
+                        }
+                        bytes += writer.write(entry);
+                        keys++;
+                    }
+                }
+                if (cursor.isFinished())
+                    break;
+                cursor = await(commands.scan(cursor, args));
+            }
+        }
+        log.info("node exported - file={} keys={} bytes={} skipped={}", file, keys, bytes, skipped);
+        return new FileResult(file.toString(), keys, bytes, skipped);
+    }
+
+    /**
+     * Reads the keys in (at most) two pipelines: TYPE and PTTL, then the values.
+     */
+    private List<KeyspaceDumpFormat.Entry> read(RedisAsyncCommands<byte[], byte[]> commands, List<byte[]> keys, Mode mode) {
+        var pttls = keys.stream().map(commands::pttl).toList();
+        var types = mode == Mode.PORTABLE ? keys.stream().map(commands::type).toList() : null;
+
+        var values = new ArrayList<RedisFuture<?>>(keys.size());
+        var entryFactories = new ArrayList<Function<Object, KeyspaceDumpFormat.Entry>>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            var pttl = await(pttls.get(i));
+            // -2: key is gone
+            if (pttl == null || pttl == -2) {
+                values.add(null);
+                entryFactories.add(null);
+                continue;
+            }
+            var type = types != null ? await(types.get(i)) : null;
+            if ("hash".equals(type)) {
+                values.add(commands.hgetall(key));
+                entryFactories.add(value -> {
+                    @SuppressWarnings("unchecked") var fields = (Map<byte[], byte[]>) value;
+                    return fields.isEmpty() ? null : new KeyspaceDumpFormat.Hash(key, pttl, fields);
+                });
+            } else if ("set".equals(type)) {
+                values.add(commands.smembers(key));
+                entryFactories.add(value -> {
+                    @SuppressWarnings("unchecked") var members = (Set<byte[]>) value;
+                    return members.isEmpty() ? null : new KeyspaceDumpFormat.Members(key, pttl, List.copyOf(members));
+                });
+            } else {
+                values.add(commands.dump(key));
+                entryFactories.add(value -> value == null ? null : new KeyspaceDumpFormat.Dump(key, pttl, (byte[]) value));
+            }
+        }
+
+        var entries = new ArrayList<KeyspaceDumpFormat.Entry>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            var value = values.get(i);
+            entries.add(value == null ? null : entryFactories.get(i).apply(await(value)));
+        }
+        return entries;
+    }
+
+    private FileResult importFile(RedisAdvancedClusterAsyncCommands<byte[], byte[]> commands, Path file) throws IOException {
+        var keys = 0L;
+        var bytes = Files.size(file);
+        try (var reader = new KeyspaceDumpFormat.Reader(file)) {
+            var pending = new ArrayList<RedisFuture<?>>(properties.getBatchSize() * 3);
+            KeyspaceDumpFormat.Entry entry;
+            while ((entry = reader.next()) != null) {
+                write(commands, entry, pending);
+                // bounded pipeline, wait for a batch before reading more
+                if (++keys % properties.getBatchSize() == 0) {
+                    awaitAll(pending);
+                    pending.clear();
+                }
+            }
+            awaitAll(pending);
+        }
+        log.info("file imported - file={} keys={} bytes={}", file, keys, bytes);
+        return new FileResult(file.toString(), keys, bytes, 0);
+    }
+
+    private static void write(RedisAdvancedClusterAsyncCommands<byte[], byte[]> commands, KeyspaceDumpFormat.Entry entry,
+                              List<RedisFuture<?>> pending) {
+        var key = entry.key();
+        // commands for the same key go to the same node connection, so they are applied in order
+        switch (entry) {
+            case KeyspaceDumpFormat.Dump dump -> {
+                var args = RestoreArgs.Builder.ttl(Math.max(0, dump.pttl())).replace();
+                pending.add(commands.restore(key, dump.payload(), args));
+            }
+            case KeyspaceDumpFormat.Hash hash -> {
+                pending.add(commands.del(key));
+                pending.add(commands.hset(key, hash.fields()));
+            }
+            case KeyspaceDumpFormat.Members members -> {
+                pending.add(commands.del(key));
+                pending.add(commands.sadd(key, members.members().toArray(byte[][]::new)));
+            }
+        }
+        if (!(entry instanceof KeyspaceDumpFormat.Dump) && entry.pttl() > 0)
+            pending.add(commands.pexpire(key, entry.pttl()));
+    }
+
+    private static <T> T await(RedisFuture<T> future) {
+        return future.toCompletableFuture().join();
+    }
+
+    private static void awaitAll(List<RedisFuture<?>> futures) {
+        CompletableFuture.allOf(futures.stream().map(RedisFuture::toCompletableFuture).toArray(CompletableFuture[]::new)).join();
+    }
+
+    private static Report report(List<Future<FileResult>> futures, long start) throws IOException {
+        var results = new ArrayList<FileResult>(futures.size());
+        for (var future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("keyspace transfer interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io)
+                    throw io;
+                if (e.getCause() instanceof UncheckedIOException io)
+                    throw io.getCause();
+                throw new IllegalStateException("keyspace transfer failed", e.getCause());
+            }
+        }
+        var durationMillis = (System.nanoTime() - start) / 1_000_000;
+        return new Report(results, results.stream().mapToLong(FileResult::keys).sum(),
+                results.stream().mapToLong(FileResult::bytes).sum(), durationMillis);
+    }
+}
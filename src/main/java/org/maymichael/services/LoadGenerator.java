@@ -0,0 +1,263 @@
+package org.maymichael.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Open loop load generator for the save paths of {@link DataService}.
+ * <p>
+ * Operations are started on a fixed schedule (rate per second), independent of how long previous operations took.
+ * Latency is measured from the <b>intended</b> start time, so time spent waiting for a free worker is included and a
+ * slow cluster can't hide its stalls by slowing the generator down (coordinated omission).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LoadGenerator {
+
+    public enum ExecutionMode {
+        // fixed pool of platform threads, size = concurrency
+        PLATFORM,
+        // one virtual thread per operation, at most concurrency in flight
+        VIRTUAL,
+        // reactor bounded elastic scheduler capped at concurrency (DataService itself is blocking)
+        REACTIVE,
+    }
+
+    public static final double MAX_RATE_PER_SECOND = 1e9;
+
+    /**
+     * Every combination of the lists is run as its own scenario. Unset values fall back to a small default run,
+     * invalid values are rejected with an {@link IllegalArgumentException} (a bad request body on /demo4).
+     */
+    public record Profile(List<DataService.SaveStrategy> strategies,
+                          List<DataService.SerializerType> serializers,
+                          List<Integer> payloadSizes,
+                          List<ExecutionMode> modes,
+                          List<Integer> concurrency,
+                          Integer itemsPerOperation,
+                          Double ratePerSecond,
+                          Integer warmupSeconds,
+                          Integer durationSeconds) {
+
+        public Profile {
+            strategies = strategies == null || strategies.isEmpty() ? List.of(DataService.SaveStrategy.PIPELINED_ADAPTER) : strategies;
+            serializers = serializers == null || serializers.isEmpty() ? List.of(DataService.SerializerType.KRYO) : serializers;
+            payloadSizes = payloadSizes == null || payloadSizes.isEmpty() ? List.of(100_000) : payloadSizes;
+            modes = modes == null || modes.isEmpty() ? List.of(ExecutionMode.VIRTUAL) : modes;
+            concurrency = concurrency == null || concurrency.isEmpty() ? List.of(16) : concurrency;
+            itemsPerOperation = itemsPerOperation == null ? 10 : itemsPerOperation;
+            ratePerSecond = ratePerSecond == null ? 20.0 : ratePerSecond;
+            warmupSeconds = warmupSeconds == null ? 5 : warmupSeconds;
+            durationSeconds = durationSeconds == null ? 30 : durationSeconds;
+
+            // the schedule needs an interval of at least 1ns between operations
+            if (!(ratePerSecond > 0 && ratePerSecond <= MAX_RATE_PER_SECOND))
+                throw new IllegalArgumentException("ratePerSecond must be > 0 and <= " + MAX_RATE_PER_SECOND + " - ratePerSecond=" + ratePerSecond);
+            if (concurrency.stream().anyMatch(c -> c == null || c < 1))
+                throw new IllegalArgumentException("concurrency must be >= 1 - concurrency=" + concurrency);
+            if (payloadSizes.stream().anyMatch(size -> size == null || size < 0))
+                throw new IllegalArgumentException("payloadSizes must be >= 0 - payloadSizes=" + payloadSizes);
+            if (itemsPerOperation < 1)
+                throw new IllegalArgumentException("itemsPerOperation must be >= 1 - itemsPerOperation=" + itemsPerOperation);
+            if (warmupSeconds < 0)
+                throw new IllegalArgumentException("warmupSeconds must be >= 0 - warmupSeconds=" + warmupSeconds);
+            if (durationSeconds < 1)
+                throw new IllegalArgumentException("durationSeconds must be >= 1 - durationSeconds=" + durationSeconds);
+            if (Stream.<List<?>>of(strategies, serializers, modes).flatMap(List::stream).anyMatch(Objects::isNull))
+                throw new IllegalArgumentException("strategies, serializers and modes must not contain null");
+        }
+    }
+
+    public record ScenarioResult(DataService.SaveStrategy strategy,
+                                 DataService.SerializerType serializer,
+                                 int payloadSize,
+                                 ExecutionMode mode,
+                                 int concurrency,
+                                 int itemsPerOperation,
+                                 double targetRatePerSecond,
+                                 long operations,
+                                 long errors,
+                                 double operationsPerSecond,
+                                 double bytesPerSecond,
+                                 double p50Millis,
+                                 double p99Millis,
+                                 double p999Millis,
+                                 double maxMillis) {
+    }
+
+    public record Report(Profile profile, List<ScenarioResult> scenarios) {
+    }
+
+    private final DataService dataService;
+
+    public Report run(Profile profile) {
+        var results = new ArrayList<ScenarioResult>();
+        for (var payloadSize : profile.payloadSizes()) {
+            var payloads = createPayloads(payloadSize, profile.itemsPerOperation());
+            for (var strategy : profile.strategies()) {
+                for (var serializer : profile.serializers()) {
+                    for (var mode : profile.modes()) {
+                        for (var concurrency : profile.concurrency()) {
+                            var scenario = new Scenario(strategy, serializer, payloads, mode, concurrency,
+                                    profile.ratePerSecond());
+                            // warmup results are thrown away (lazy init, jit, connections)
+                            runScenario(scenario, TimeUnit.SECONDS.toNanos(profile.warmupSeconds()));
+                            var result = runScenario(scenario, TimeUnit.SECONDS.toNanos(profile.durationSeconds()));
+                            log.info("load scenario done - strategy={} serializer={} payloadSize={} mode={} concurrency={} ops/s={} p50={}ms p99={}ms p999={}ms errors={}",
+                                    strategy, serializer, payloadSize, mode, concurrency,
+                                    String.format("%.1f", result.operationsPerSecond()), result.p50Millis(),
+                                    result.p99Millis(), result.p999Millis(), result.errors());
+                            results.add(result);
+                        }
+                    }
+                }
+            }
+        }
+        return new Report(profile, results);
+    }
+
+    private record Scenario(DataService.SaveStrategy strategy, DataService.SerializerType serializer,
+                            List<byte[]> payloads, ExecutionMode mode, int concurrency, double ratePerSecond) {
+
+        int payloadSize() {
+            return payloads.isEmpty() ? 0 : payloads.getFirst().length;
+        }
+    }
+
+    private ScenarioResult runScenario(Scenario scenario, long durationNanos) {
+        var histogram = new ConcurrentHistogram(3);
+        var errors = new AtomicLong();
+        var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / scenario.ratePerSecond());
+        var dispatcher = new Dispatcher(scenario.mode(), scenario.concurrency());
+
+        var start = System.nanoTime();
+        var operations = 0L;
+        try {
+            // open loop: the n-th operation is due at start + n * interval, no matter what
+            for (var intended = start; intended - start < durationNanos; intended += intervalNanos) {
+                var wait = intended - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+                final var intendedStart = intended;
+                dispatcher.submit(() -> {
+                    try {
+                        dataService.saveData(UUID.randomUUID().toString(), scenario.payloads(), scenario.strategy(), scenario.serializer());
+                    } catch (Exception e) {
+                        log.debug("load operation failed: ", e);
+                        errors.incrementAndGet();
+                    } finally {
+                        histogram.recordValue(System.nanoTime() - intendedStart);
+                    }
+                });
+                operations++;
+            }
+        } finally {
+            dispatcher.close();
+        }
+        var elapsedNanos = System.nanoTime() - start;
+
+        var seconds = elapsedNanos / 1e9;
+        var bytesPerOperation = (double) scenario.payloadSize() * scenario.payloads().size();
+        return new ScenarioResult(scenario.strategy(), scenario.serializer(), scenario.payloadSize(), scenario.mode(),
+                scenario.concurrency(), scenario.payloads().size(), scenario.ratePerSecond(), operations, errors.get(),
+                operations / seconds, operations * bytesPerOperation / seconds,
+                millis(histogram, 50.0), millis(histogram, 99.0), millis(histogram, 99.9),
+                histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue() / 1e6);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static List<byte[]> createPayloads(int size, int count) {
+        var payloads = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; i++) {
+            payloads.add(RandomStringUtils.insecure().nextAlphanumeric(size).getBytes(StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    /**
+     * Runs operations in the requested execution mode, with at most {@code concurrency} in flight. Operations that
+     * can't start right away queue up (and that time counts towards their latency).
+     */
+    private static class Dispatcher implements AutoCloseable {
+        private final ExecutionMode mode;
+        private final ExecutorService executor;
+        private final Semaphore inFlight;
+        private final Scheduler scheduler;
+        private final AtomicLong pending = new AtomicLong();
+
+        Dispatcher(ExecutionMode mode, int concurrency) {
+            this.mode = mode;
+            this.inFlight = new Semaphore(concurrency);
+            this.executor = switch (mode) {
+                case PLATFORM -> Executors.newFixedThreadPool(concurrency);
+                case VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+                case REACTIVE -> null;
+            };
+            this.scheduler = mode == ExecutionMode.REACTIVE
+                    ? Schedulers.newBoundedElastic(concurrency, Integer.MAX_VALUE, "load-generator")
+                    : null;
+        }
+
+        void submit(Runnable operation) {
+            pending.incrementAndGet();
+            switch (mode) {
+                case PLATFORM -> executor.execute(() -> runAndComplete(operation));
+                case VIRTUAL -> executor.execute(() -> {
+                    inFlight.acquireUninterruptibly();
+                    try {
+                        runAndComplete(operation);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                case REACTIVE -> Mono.fromRunnable(() -> runAndComplete(operation))
+                        .subscribeOn(scheduler)
+                        .subscribe();
+            }
+        }
+
+        private void runAndComplete(Runnable operation) {
+            try {
+                operation.run();
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+            // wait for everything that was started
+            while (pending.get() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            if (executor != null)
+                executor.shutdown();
+            if (scheduler != null)
+                scheduler.dispose();
+        }
+    }
+}
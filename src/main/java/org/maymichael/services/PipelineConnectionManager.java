@@ -0,0 +1,291 @@
+package org.maymichael.services;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.util.FairShareScheduler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Long-lived, per node pipelines on dedicated lettuce connections with auto flush disabled.
+ * <p>
+ * Any number of threads can submit commands, they are routed by slot to the queue of the owning primary
+ * (lock free multi producer queue). One drainer per node takes commands off its queue, writes them to the node
+ * connection and flushes in batches, so writers never touch a connection and never wait for each other.
+ * <p>
+ * Commands go directly to the node, MOVED/ASK redirects are not followed, they fail the returned future.
+ * <p>
+ * Payload bytes queued or awaiting a reply are capped per node, writers block until the node caught up, so a slow
+ * node can't make the client buffer an unbounded amount of data.
+ * <p>
+ * Tenants get their own instance on their own connections ({@link TenantRouter}), their batches are dispatched in
+ * fair share with the other tenants' ({@link FairShareScheduler}).
+ */
+@Slf4j
+@Service
+public class PipelineConnectionManager implements DisposableBean {
+
+    private final StatefulRedisClusterConnection<byte[], byte[]> clusterConnection;
+    private final int maxBatchCommands;
+    private final int maxInFlightKib;
+    private final Map<String, NodePipeline> pipelines = new ConcurrentHashMap<>();
+    @Nullable
+    private final FairShareScheduler.Share share;
+    // drainers only dispatch and flush, they never block on results (but may wait for their fair share)
+    private final ExecutorService drainers = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public PipelineConnectionManager(StatefulRedisClusterConnection<byte[], byte[]> pipelineConnection,
+                                     PlaygroundProperties playgroundProperties) {
+        this(pipelineConnection, playgroundProperties.getPipeline().getMaxBatchCommands(),
+                playgroundProperties.getPipeline().getMaxInFlightBytesPerNode().toBytes(), null);
+    }
+
+    /**
+     * @param share fair share every dispatched batch waits for, {@literal null} to dispatch right away
+     */
+    public PipelineConnectionManager(StatefulRedisClusterConnection<byte[], byte[]> pipelineConnection, int maxBatchCommands,
+                                     long maxInFlightBytesPerNode, @Nullable FairShareScheduler.Share share) {
+        this.clusterConnection = pipelineConnection;
+        this.maxBatchCommands = maxBatchCommands;
+        this.maxInFlightKib = (int) Math.clamp(maxInFlightBytesPerNode / 1024, 1, Integer.MAX_VALUE);
+        this.share = share;
+    }
+
+    /**
+     * Queues a command for the primary owning {@code routingKey}. The future completes with the command result.
+     */
+    public <T> CompletableFuture<T> submit(byte[] routingKey, Function<RedisAsyncCommands<byte[], byte[]>, RedisFuture<T>> command) {
+        return submit(routingKey, 0, command);
+    }
+
+    /**
+     * Same as {@link #submit(byte[], Function)}, but counts {@code bytes} towards the node's in-flight limit and
+     * blocks while the node is above it.
+     */
+    public <T> CompletableFuture<T> submit(byte[] routingKey, long bytes, Function<RedisAsyncCommands<byte[], byte[]>, RedisFuture<T>> command) {
+        var node = clusterConnection.getPartitions().getPartitionBySlot(SlotHash.getSlot(routingKey));
+        if (node == null)
+            return CompletableFuture.failedFuture(new IllegalStateException("no node serving slot " + SlotHash.getSlot(routingKey)));
+        var pipeline = pipelines.computeIfAbsent(node.getNodeId(), NodePipeline::new);
+        // a single command above the limit takes all permits instead of waiting forever
+        var permits = (int) Math.min(maxInFlightKib, (bytes + 1023) / 1024);
+        if (permits > 0)
+            pipeline.inFlight.acquireUninterruptibly(permits);
+        var operation = new Operation<>(command, bytes, new CompletableFuture<>());
+        if (permits > 0)
+            operation.result().whenComplete((value, error) -> pipeline.inFlight.release(permits));
+        pipeline.queue.offer(operation);
+        pipeline.schedule();
+        return operation.result();
+    }
+
+    /**
+     * WAITs on every primary owning one of the keys until the commands queued on its pipeline so far reached
+     * {@code replicas} replicas (or the timeout passed). The node connection is blocked server side meanwhile, meant
+     * for critical batches only.
+     *
+     * @return the lowest number of replicas that acknowledged on any of the nodes
+     */
+    public CompletableFuture<Long> waitForReplicas(Collection<byte[]> routingKeys, int replicas, long timeoutMillis) {
+        // one WAIT per node, it covers everything written on that connection before
+        var keyPerNode = new HashMap<String, byte[]>();
+        for (var key : routingKeys) {
+            var node = clusterConnection.getPartitions().getPartitionBySlot(SlotHash.getSlot(key));
+            if (node == null)
+                return CompletableFuture.failedFuture(new IllegalStateException("no node serving slot " + SlotHash.getSlot(key)));
+            keyPerNode.putIfAbsent(node.getNodeId(), key);
+        }
+        var acknowledged = keyPerNode.values().stream()
+                .map(key -> submit(key, commands -> commands.waitForReplication(replicas, timeoutMillis)))
+                .toList();
+        return CompletableFuture.allOf(acknowledged.toArray(CompletableFuture[]::new))
+                .thenApply(done -> acknowledged.stream().mapToLong(CompletableFuture::join).min().orElse(replicas));
+    }
+
+    /**
+     * Collects the commands of one or more entities, see {@link PipelinedRedisKeyValueAdapter#putOnSink}.
+     * Thread safe, so entities can be converted in parallel.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    public class Batch implements PipelinedRedisKeyValueAdapter.CommandSink {
+        private final ConcurrentLinkedQueue<CompletableFuture<?>> results = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void hMSet(byte[] key, Map<byte[], byte[]> hashes) {
+            var bytes = 0L;
+            for (var entry : hashes.entrySet()) {
+                bytes += entry.getKey().length + (entry.getValue() != null ? entry.getValue().length : 0);
+            }
+            results.add(submit(key, bytes, commands -> commands.hmset(key, hashes)));
+        }
+
+        @Override
+        public void sAdd(byte[] key, byte[] member) {
+            results.add(submit(key, commands -> commands.sadd(key, member)));
+        }
+
+        @Override
+        public void expire(byte[] key, long seconds) {
+            results.add(submit(key, commands -> commands.expire(key, seconds)));
+        }
+
+        @Override
+        public void geoAdd(byte[] key, Point point, byte[] member) {
+            results.add(submit(key, commands -> commands.geoadd(key, point.getX(), point.getY(), member)));
+        }
+
+        @Override
+        public void sRem(byte[] key, byte[] member) {
+            results.add(submit(key, commands -> commands.srem(key, member)));
+        }
+
+        @Override
+        public void zAdd(byte[] key, double score, byte[] member) {
+            results.add(submit(key, commands -> commands.zadd(key, score, member)));
+        }
+
+        @Override
+        public void zRem(byte[] key, byte[] member) {
+            results.add(submit(key, commands -> commands.zrem(key, member)));
+        }
+
+        /**
+         * @return completes once every command submitted so far got its reply
+         */
+        public CompletableFuture<Void> completion() {
+            return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new));
+        }
+    }
+
+    private record Operation<T>(Function<RedisAsyncCommands<byte[], byte[]>, RedisFuture<T>> command, long bytes,
+                                CompletableFuture<T> result) {
+
+        void dispatch(RedisAsyncCommands<byte[], byte[]> commands) {
+            try {
+                command.apply(commands).whenComplete((value, error) -> {
+                    if (error != null)
+                        result.completeExceptionally(error);
+                    else
+                        result.complete(value);
+                });
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private class NodePipeline {
+        private final String nodeId;
+        private final ConcurrentLinkedQueue<Operation<?>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // in KiB, released when the reply arrived
+        private final Semaphore inFlight = new Semaphore(maxInFlightKib);
+        private volatile StatefulRedisConnection<byte[], byte[]> connection;
+
+        NodePipeline(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        void schedule() {
+            // at most one drainer per node, whoever flips the flag starts it
+            if (scheduled.compareAndSet(false, true))
+                drainers.execute(this::drain);
+        }
+
+        private StatefulRedisConnection<byte[], byte[]> connection() {
+            if (connection == null) {
+                var nodeConnection = clusterConnection.getConnection(nodeId);
+                nodeConnection.setAutoFlushCommands(false);
+                connection = nodeConnection;
+            }
+            return connection;
+        }
+
+        private void drain() {
+            do {
+                try {
+                    var nodeConnection = connection();
+                    var commands = nodeConnection.async();
+                    if (share != null) {
+                        drainFairly(nodeConnection, commands, share);
+                    } else {
+                        var pending = 0;
+                        Operation<?> operation;
+                        while ((operation = queue.poll()) != null) {
+                            operation.dispatch(commands);
+                            if (++pending >= maxBatchCommands) {
+                                nodeConnection.flushCommands();
+                                pending = 0;
+                            }
+                        }
+                        if (pending > 0)
+                            nodeConnection.flushCommands();
+                    }
+                } catch (RuntimeException e) {
+                    // can't get a connection to the node, fail everything queued for it
+                    log.warn("pipeline drain failed - node={}: ", nodeId, e);
+                    Operation<?> operation;
+                    while ((operation = queue.poll()) != null) {
+                        operation.result().completeExceptionally(e);
+                    }
+                }
+                scheduled.set(false);
+                // a writer may have queued after our last poll but before we cleared the flag
+            } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        /**
+         * Dispatches batch by batch, each one once it got its share (payload bytes, at least one per command) and
+         * returns the share when all of its replies arrived.
+         */
+        private void drainFairly(StatefulRedisConnection<byte[], byte[]> nodeConnection,
+                                 RedisAsyncCommands<byte[], byte[]> commands, FairShareScheduler.Share share) {
+            var batch = new ArrayList<Operation<?>>(Math.min(maxBatchCommands, 1024));
+            Operation<?> operation;
+            while (true) {
+                var cost = 0L;
+                while (batch.size() < maxBatchCommands && (operation = queue.poll()) != null) {
+                    batch.add(operation);
+                    cost += Math.max(1, operation.bytes());
+                }
+                if (batch.isEmpty())
+                    return;
+                var taken = share.acquire(cost);
+                var replies = new CompletableFuture<?>[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).dispatch(commands);
+                    replies[i] = batch.get(i).result();
+                }
+                nodeConnection.flushCommands();
+                CompletableFuture.allOf(replies).whenComplete((done, error) -> share.release(taken));
+                batch.clear();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        drainers.close();
+    }
+}
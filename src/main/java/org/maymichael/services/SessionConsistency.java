@@ -0,0 +1,213 @@
+package org.maymichael.services;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.protocol.ConnectionIntent;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Read your writes on replicas: a {@link Session} remembers the replication offset of every primary it wrote to
+ * (INFO replication, read once the writes were acknowledged). Reads of the session only go to replicas of that
+ * primary whose offset reached it, so they keep scaling over the replicas instead of falling back to the primary.
+ * If no replica caught up within {@code max-replica-wait} the read goes to the primary. Keys the session didn't
+ * write to are read from any replica.
+ * <p>
+ * Offsets are only comparable within one replication history, after a failover the recorded primary is gone and
+ * reads of its slots go to the new primary.
+ */
+@Slf4j
+@Service
+public class SessionConsistency implements DisposableBean {
+
+    private static final String PRIMARY_OFFSET = "master_repl_offset";
+    private static final String REPLICA_OFFSET = "slave_repl_offset";
+
+    /**
+     * Replication offsets a reader has to see, by primary node id. Thread safe.
+     */
+    public static final class Session {
+        private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+        private void record(String nodeId, long offset) {
+            offsets.merge(nodeId, offset, Math::max);
+        }
+    }
+
+    private record ReplicaOffset(long offset, long readAt) {
+    }
+
+    private final PlaygroundProperties.Consistency properties;
+    @Nullable
+    private final LettuceConnectionFactory connectionFactory;
+    private final Map<String, ReplicaOffset> replicaOffsets = new ConcurrentHashMap<>();
+    private volatile StatefulRedisClusterConnection<byte[], byte[]> connection;
+
+    @Autowired
+    public SessionConsistency(PlaygroundProperties playgroundProperties, LettuceConnectionFactory connectionFactory) {
+        this.properties = playgroundProperties.getConsistency();
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Uses the given connection instead of opening one.
+     */
+    SessionConsistency(PlaygroundProperties.Consistency properties, StatefulRedisClusterConnection<byte[], byte[]> connection) {
+        this.properties = properties;
+        this.connectionFactory = null;
+        this.connection = connection;
+    }
+
+    public boolean isEnabled() {
+        return properties.getMode() == PlaygroundProperties.ConsistencyMode.SESSION;
+    }
+
+    /**
+     * @return replicas critical batches WAIT for, 0 if they don't
+     */
+    public int getWaitReplicas() {
+        return properties.getWaitReplicas();
+    }
+
+    public long getWaitTimeoutMillis() {
+        return properties.getWaitTimeout().toMillis();
+    }
+
+    public Session session() {
+        return new Session();
+    }
+
+    private StatefulRedisClusterConnection<byte[], byte[]> connection() {
+        if (connection == null) {
+            synchronized (this) {
+                if (connection == null) {
+                    // own connection, node selection is done here and not by ReadFrom
+                    var client = (RedisClusterClient) Objects.requireNonNull(connectionFactory).getRequiredNativeClient();
+                    connection = client.connect(ByteArrayCodec.INSTANCE);
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Records the current offset of every primary owning one of the keys. Call it after the writes were
+     * acknowledged.
+     */
+    public void recordWrites(Session session, Collection<byte[]> keys) {
+        var partitions = connection().getPartitions();
+        var primaries = new HashSet<String>();
+        for (var key : keys) {
+            var primary = partitions.getPartitionBySlot(SlotHash.getSlot(key));
+            if (primary != null)
+                primaries.add(primary.getNodeId());
+        }
+        for (var nodeId : primaries) {
+            var offset = offset(connection().getConnection(nodeId, ConnectionIntent.WRITE).sync(), PRIMARY_OFFSET);
+            if (offset >= 0)
+                session.record(nodeId, offset);
+        }
+        log.debug("session writes recorded - primaries={} offsets={}", primaries.size(), session.offsets);
+    }
+
+    /**
+     * Runs a read command on a node that has all writes of the session to the key's slot.
+     */
+    public <T> T read(Session session, byte[] key, Function<RedisCommands<byte[], byte[]>, T> command) {
+        return command.apply(nodeFor(session, key).sync());
+    }
+
+    StatefulRedisConnection<byte[], byte[]> nodeFor(Session session, byte[] key) {
+        var clusterConnection = connection();
+        var partitions = clusterConnection.getPartitions();
+        var slot = SlotHash.getSlot(key);
+        var primary = partitions.getPartitionBySlot(slot);
+        if (primary == null)
+            throw new IllegalStateException("no node serving slot " + slot);
+        var replicas = new ArrayList<RedisClusterNode>();
+        for (var node : partitions) {
+            if (node.getRole().isReplica() && primary.getNodeId().equals(node.getSlaveOf())
+                    && !node.is(RedisClusterNode.NodeFlag.FAIL) && !node.is(RedisClusterNode.NodeFlag.EVENTUAL_FAIL))
+                replicas.add(node);
+        }
+        if (replicas.isEmpty())
+            return clusterConnection.getConnection(primary.getNodeId(), ConnectionIntent.WRITE);
+
+        var required = session.offsets.get(primary.getNodeId());
+        if (required == null)
+            return replica(replicas.get(ThreadLocalRandom.current().nextInt(replicas.size())));
+
+        var deadline = System.nanoTime() + properties.getMaxReplicaWait().toNanos();
+        var caughtUp = new ArrayList<RedisClusterNode>(replicas.size());
+        while (true) {
+            for (var replica : replicas) {
+                if (replicaOffset(replica, required) >= required)
+                    caughtUp.add(replica);
+            }
+            if (!caughtUp.isEmpty())
+                return replica(caughtUp.get(ThreadLocalRandom.current().nextInt(caughtUp.size())));
+            if (System.nanoTime() >= deadline)
+                break;
+            LockSupport.parkNanos(Math.max(100_000, properties.getOffsetRefreshInterval().toNanos()));
+        }
+        log.debug("no replica caught up, reading from primary - node={} required={}", primary.getNodeId(), required);
+        return clusterConnection.getConnection(primary.getNodeId(), ConnectionIntent.WRITE);
+    }
+
+    private StatefulRedisConnection<byte[], byte[]> replica(RedisClusterNode replica) {
+        // READ intent: lettuce sends READONLY, so replicas serve the reads instead of redirecting them
+        return connection().getConnection(replica.getNodeId(), ConnectionIntent.READ);
+    }
+
+    /**
+     * @return cached offset if it reached {@code required} (offsets only grow) or was read within the refresh
+     * interval, -1 if the replica can't be asked
+     */
+    private long replicaOffset(RedisClusterNode replica, long required) {
+        var cached = replicaOffsets.get(replica.getNodeId());
+        var now = System.nanoTime();
+        if (cached != null && (cached.offset() >= required || now - cached.readAt() < properties.getOffsetRefreshInterval().toNanos()))
+            return cached.offset();
+        long offset;
+        try {
+            offset = offset(replica(replica).sync(), REPLICA_OFFSET);
+        } catch (RuntimeException e) {
+            log.debug("reading replica offset failed - node={}", replica.getNodeId(), e);
+            offset = -1;
+        }
+        replicaOffsets.put(replica.getNodeId(), new ReplicaOffset(offset, now));
+        return offset;
+    }
+
+    static long offset(RedisCommands<byte[], byte[]> commands, String field) {
+        var info = commands.info("replication");
+        var prefix = field + ":";
+        for (var line : info.split("\r?\n")) {
+            if (line.startsWith(prefix))
+                return Long.parseLong(line.substring(prefix.length()).trim());
+        }
+        return -1;
+    }
+
+    @Override
+    public void destroy() {
+        if (connection != null)
+            connection.close();
+    }
+}
@@ -0,0 +1,217 @@
+package org.maymichael.services;
+
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.resource.ClientResources;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.util.FairShareScheduler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Isolates the configured tenants from each other: every tenant gets its own client (own event loops, unless
+ * {@code io-threads} is 0), its own cluster connection and node pipelines, a limit of concurrent operations and a
+ * weighted fair share of the bytes in flight to the cluster. A tenant flooding the cluster with big writes only
+ * queues behind its own backlog, it can't fill the event loops or node connections the others use.
+ * <p>
+ * Keys of a tenant are prefixed with {@code <tenant>:} (ids and all index values). The keyspace sets are fixed by
+ * {@code @RedisHash} and shared, so counting or scanning a keyspace sees every tenant. Contexts are created on first use and closed on shutdown. Their clients connect with the
+ * nodes, credentials (ACL user) and tls settings of the shared connection factory.
+ */
+@Slf4j
+@Service
+public class TenantRouter implements DisposableBean {
+
+    public static final class Context {
+        private final String name;
+        private final String prefix;
+        private final Semaphore operations;
+        private final RedisClusterClient client;
+        private final ClientResources resources;
+        private final boolean ownResources;
+        private final StatefulRedisClusterConnection<byte[], byte[]> connection;
+        private final PipelineConnectionManager pipelines;
+
+        private Context(String name, Semaphore operations, RedisClusterClient client, ClientResources resources,
+                        boolean ownResources, StatefulRedisClusterConnection<byte[], byte[]> connection,
+                        PipelineConnectionManager pipelines) {
+            this.name = name;
+            this.prefix = name + ":";
+            this.operations = operations;
+            this.client = client;
+            this.resources = resources;
+            this.ownResources = ownResources;
+            this.connection = connection;
+            this.pipelines = pipelines;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return prefix of the tenant's ids and index values
+         */
+        public String prefix() {
+            return prefix;
+        }
+
+        public PipelineConnectionManager pipelines() {
+            return pipelines;
+        }
+
+        private void close() {
+            pipelines.destroy();
+            connection.close();
+            client.shutdown();
+            if (ownResources)
+                resources.shutdown();
+        }
+    }
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final PlaygroundProperties.Tenancy properties;
+    private final int maxBatchCommands;
+    private final FairShareScheduler scheduler;
+    // completed once connected, connecting blocks and must not happen inside the map's compute
+    private final Map<String, CompletableFuture<Context>> contexts = new ConcurrentHashMap<>();
+    // operations wait for their tenant's permit here, never on a netty thread
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public TenantRouter(LettuceConnectionFactory connectionFactory, PlaygroundProperties playgroundProperties) {
+        this.connectionFactory = connectionFactory;
+        this.properties = playgroundProperties.getTenancy();
+        this.maxBatchCommands = playgroundProperties.getPipeline().getMaxBatchCommands();
+        this.scheduler = new FairShareScheduler(Math.max(1, properties.getMaxInFlightBytes().toBytes()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the tenant isn't configured
+     */
+    public Context context(String tenant) {
+        var context = contexts.get(tenant);
+        if (context == null) {
+            var tenantProperties = properties.getTenants().get(tenant);
+            if (tenantProperties == null)
+                throw new IllegalArgumentException("unknown tenant " + tenant);
+            var created = new CompletableFuture<Context>();
+            context = contexts.putIfAbsent(tenant, created);
+            if (context == null) {
+                // this caller connects, concurrent callers of the same tenant wait for it below
+                context = created;
+                try {
+                    created.complete(connect(tenant, tenantProperties));
+                } catch (RuntimeException e) {
+                    // the next call tries again
+                    contexts.remove(tenant, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+        try {
+            return context.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Runs {@code operation} once the tenant has a free operation slot, the slot is returned when the future
+     * completes.
+     */
+    public <T> CompletableFuture<T> execute(String tenant, Function<Context, CompletableFuture<T>> operation) {
+        if (!properties.getTenants().containsKey(tenant))
+            return CompletableFuture.failedFuture(new IllegalArgumentException("unknown tenant " + tenant));
+        return CompletableFuture.supplyAsync(() -> {
+            // may connect the tenant, off the caller's (event loop) thread
+            var context = context(tenant);
+            context.operations.acquireUninterruptibly();
+            try {
+                return operation.apply(context)
+                        .whenComplete((value, error) -> context.operations.release());
+            } catch (RuntimeException e) {
+                context.operations.release();
+                throw e;
+            }
+        }, executor).thenCompose(Function.identity());
+    }
+
+    private Context connect(String name, PlaygroundProperties.Tenant tenant) {
+        var shared = (RedisClusterClient) connectionFactory.getRequiredNativeClient();
+        var ownResources = tenant.getIoThreads() > 0;
+        var resources = ownResources
+                ? ClientResources.builder()
+                .ioThreadPoolSize(tenant.getIoThreads())
+                .computationThreadPoolSize(tenant.getIoThreads())
+                .reconnectDelay(shared.getResources().reconnectDelay())
+                .build()
+                : shared.getResources();
+
+        // same nodes, credentials, timeout and tls as the shared factory
+        var clusterConfiguration = connectionFactory.getClusterConfiguration();
+        if (clusterConfiguration == null)
+            throw new IllegalStateException("tenants need a cluster connection factory");
+        var clientConfiguration = connectionFactory.getClientConfiguration();
+        var password = clusterConfiguration.getPassword();
+        var uris = new ArrayList<RedisURI>();
+        for (RedisNode node : clusterConfiguration.getClusterNodes()) {
+            var uri = RedisURI.builder()
+                    .withHost(node.getHost())
+                    .withPort(node.getPort() != null ? node.getPort() : RedisURI.DEFAULT_REDIS_PORT)
+                    .withTimeout(clientConfiguration.getCommandTimeout())
+                    .withSsl(clientConfiguration.isUseSsl())
+                    .withVerifyPeer(clientConfiguration.isVerifyPeer())
+                    .withStartTls(clientConfiguration.isStartTls());
+            if (password.isPresent() && clusterConfiguration.getUsername() != null)
+                uri.withAuthentication(clusterConfiguration.getUsername(), password.get());
+            else if (password.isPresent())
+                uri.withPassword(password.get());
+            uris.add(uri.build());
+        }
+        var client = RedisClusterClient.create(resources, uris);
+        // same timeouts and topology refresh as the shared client
+        client.setOptions((ClusterClientOptions) shared.getOptions());
+        var connection = client.connect(ByteArrayCodec.INSTANCE);
+
+        var share = scheduler.share(name, tenant.getWeight());
+        var pipelines = new PipelineConnectionManager(connection, maxBatchCommands,
+                tenant.getMaxInFlightBytesPerNode().toBytes(), share);
+        log.info("tenant connected - tenant={} ioThreads={} weight={} maxConcurrentOperations={}", name,
+                tenant.getIoThreads(), tenant.getWeight(), tenant.getMaxConcurrentOperations());
+        return new Context(name, new Semaphore(Math.max(1, tenant.getMaxConcurrentOperations())), client, resources,
+                ownResources, connection, pipelines);
+    }
+
+    @Override
+    public void destroy() {
+        executor.close();
+        contexts.values().forEach(future -> {
+            if (future.state() != Future.State.SUCCESS)
+                return;
+            var context = future.resultNow();
+            try {
+                context.close();
+            } catch (RuntimeException e) {
+                log.warn("closing tenant failed - tenant={}", context.name(), e);
+            }
+        });
+        contexts.clear();
+    }
+}
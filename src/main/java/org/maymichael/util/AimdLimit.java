@@ -0,0 +1,46 @@
+package org.maymichael.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Additive increase / multiplicative decrease limit, tuned from latency samples (same idea as tcp congestion
+ * control): as long as samples stay below the target the limit grows by a fixed step, a slow sample halves it.
+ * Thread safe, samples may come from concurrent callers.
+ */
+public class AimdLimit {
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final long min;
+    private final long max;
+    private final long increaseStep;
+    private final long targetLatencyNanos;
+    private final AtomicLong limit;
+
+    public AimdLimit(long min, long max, long initial, long increaseStep, long targetLatencyNanos) {
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException("invalid limit bounds min=" + min + " max=" + max);
+        this.min = min;
+        this.max = max;
+        this.increaseStep = increaseStep;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.limit = new AtomicLong(Math.clamp(initial, min, max));
+    }
+
+    public long current() {
+        return limit.get();
+    }
+
+    /**
+     * @param latencyNanos observed latency of one unit of work
+     * @param saturated    whether the work actually used the full limit, underfull work (e.g. the tail of a list)
+     *                     says nothing about a larger limit and only counts when it was too slow
+     */
+    public void onSample(long latencyNanos, boolean saturated) {
+        if (latencyNanos > targetLatencyNanos) {
+            limit.updateAndGet(current -> Math.max(min, (long) (current * DECREASE_FACTOR)));
+        } else if (saturated) {
+            limit.updateAndGet(current -> Math.min(max, current + increaseStep));
+        }
+    }
+}
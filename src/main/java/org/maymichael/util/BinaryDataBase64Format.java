@@ -0,0 +1,220 @@
+package org.maymichael.util;
+
+import org.maymichael.data.BinaryDataBase64;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Streaming codec for the json form of {@link BinaryDataBase64}: {@code {"id":"..","data":"<base64>"}}, byte for
+ * byte what our {@code ObjectMapper} writes, so both can read each other's output.
+ * <p>
+ * Encoding writes straight into an exactly sized array, decoding base64-decodes the data field directly out of the
+ * input, neither builds a json tree or intermediate strings. Anything the fast path doesn't understand (escaped
+ * strings, nested values, ..) returns {@literal null}, callers fall back to jackson then.
+ */
+public final class BinaryDataBase64Format {
+
+    private static final byte[] ID_PREFIX = "{\"id\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_PREFIX = "\",\"data\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private BinaryDataBase64Format() {
+    }
+
+    public static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * @return the json bytes or {@literal null} if the id needs json escaping
+     */
+    public static byte[] encode(BinaryDataBase64 value) {
+        var id = value.getId();
+        if (needsEscaping(id))
+            return null;
+        var idBytes = id.getBytes(StandardCharsets.UTF_8);
+        var data = value.getData();
+        // jackson leaves out null and empty arrays (NON_EMPTY)
+        var hasData = data != null && data.length > 0;
+        var size = ID_PREFIX.length + idBytes.length + (hasData ? DATA_PREFIX.length + base64Length(data.length) : 0) + 2;
+
+        var out = new byte[size];
+        var position = put(out, 0, ID_PREFIX);
+        position = put(out, position, idBytes);
+        if (hasData) {
+            position = put(out, position, DATA_PREFIX);
+            position = encodeBase64(data, out, position);
+        }
+        out[position++] = '"';
+        out[position] = '}';
+        return out;
+    }
+
+    /**
+     * @return the decoded value or {@literal null} if the input is not in the simple form this codec handles
+     */
+    public static BinaryDataBase64 decode(byte[] json) {
+        var reader = new Reader(json);
+        String id = null;
+        byte[] data = null;
+        if (!reader.consume('{'))
+            return null;
+        if (!reader.consume('}')) {
+            do {
+                var key = reader.string();
+                if (key == null || !reader.consume(':'))
+                    return null;
+                if (reader.consumeNull())
+                    continue;
+                switch (key) {
+                    case "id" -> {
+                        var value = reader.string();
+                        if (value == null)
+                            return null;
+                        id = value;
+                    }
+                    case "data" -> {
+                        data = reader.base64();
+                        if (data == null)
+                            return null;
+                    }
+                    // unknown string fields are skipped, everything else goes through jackson
+                    default -> {
+                        if (reader.string() == null)
+                            return null;
+                    }
+                }
+            } while (reader.consume(','));
+            if (!reader.consume('}'))
+                return null;
+        }
+        if (!reader.atEnd())
+            return null;
+        var result = new BinaryDataBase64();
+        if (id != null)
+            result.setId(id);
+        result.setData(data);
+        return result;
+    }
+
+    private static boolean needsEscaping(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20)
+                return true;
+        }
+        return false;
+    }
+
+    private static int put(byte[] out, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, out, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    // standard alphabet with padding, same as jackson's default variant
+    private static int encodeBase64(byte[] src, byte[] out, int position) {
+        var full = src.length / 3 * 3;
+        for (int i = 0; i < full; i += 3) {
+            var bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            out[position++] = ALPHABET[bits >>> 18 & 0x3f];
+            out[position++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[position++] = ALPHABET[bits >>> 6 & 0x3f];
+            out[position++] = ALPHABET[bits & 0x3f];
+        }
+        var remaining = src.length - full;
+        if (remaining > 0) {
+            var bits = (src[full] & 0xff) << 16 | (remaining == 2 ? (src[full + 1] & 0xff) << 8 : 0);
+            out[position++] = ALPHABET[bits >>> 18 & 0x3f];
+            out[position++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[position++] = remaining == 2 ? ALPHABET[bits >>> 6 & 0x3f] : (byte) '=';
+            out[position++] = '=';
+        }
+        return position;
+    }
+
+    private static final class Reader {
+        private final byte[] json;
+        private int position;
+
+        Reader(byte[] json) {
+            this.json = json;
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length && (json[position] == ' ' || json[position] == '\n'
+                    || json[position] == '\r' || json[position] == '\t'))
+                position++;
+        }
+
+        boolean consume(char expected) {
+            skipWhitespace();
+            if (position < json.length && json[position] == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean consumeNull() {
+            skipWhitespace();
+            if (position + 4 <= json.length && json[position] == 'n' && json[position + 1] == 'u'
+                    && json[position + 2] == 'l' && json[position + 3] == 'l') {
+                position += 4;
+                return true;
+            }
+            return false;
+        }
+
+        boolean atEnd() {
+            skipWhitespace();
+            return position == json.length;
+        }
+
+        /**
+         * @return end (exclusive) of a string without escapes starting at the current position, -1 otherwise
+         */
+        private int stringEnd() {
+            skipWhitespace();
+            if (position >= json.length || json[position] != '"')
+                return -1;
+            for (int i = position + 1; i < json.length; i++) {
+                if (json[i] == '"')
+                    return i;
+                if (json[i] == '\\')
+                    return -1;
+            }
+            return -1;
+        }
+
+        String string() {
+            var end = stringEnd();
+            if (end < 0)
+                return null;
+            var value = new String(json, position + 1, end - position - 1, StandardCharsets.UTF_8);
+            position = end + 1;
+            return value;
+        }
+
+        byte[] base64() {
+            var end = stringEnd();
+            if (end < 0)
+                return null;
+            try {
+                // decodes straight out of the input array, into an exactly sized result
+                var decoded = Base64.getDecoder().decode(ByteBuffer.wrap(json, position + 1, end - position - 1));
+                position = end + 1;
+                if (decoded.hasArray() && decoded.arrayOffset() == 0 && decoded.remaining() == decoded.array().length)
+                    return decoded.array();
+                var bytes = new byte[decoded.remaining()];
+                decoded.get(bytes);
+                return bytes;
+            } catch (IllegalArgumentException e) {
+                // not plain base64 (e.g. line feeds), let jackson deal with it
+                return null;
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ public BinaryDataBase64ToBytesConverter(final ObjectMapper objectMapper) {
     @Override
     @SneakyThrows
     public byte[] convert(@NonNull BinaryDataBase64 value) {
-        return serializer.serialize(value);
+        // same json as jackson, without the tree and the base64 string in between
+        var encoded = BinaryDataBase64Format.encode(value);
+        return encoded != null ? encoded : serializer.serialize(value);
     }
 }
@@ -0,0 +1,102 @@
+package org.maymichael.util;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
+import org.maymichael.data.BinaryData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lettuce codec for {@link BinaryData} hash values, bypassing spring data's byte[] based conversion.
+ * <p>
+ * Values are written (kryo or {@link BinaryDataFormat}) straight into the (pooled, usually direct) netty buffer lettuce hands us,
+ * and read straight from the buffer lettuce decoded the response into. The stored formats are the same as
+ * {@link BinaryDataToBytesConverter}, so values are interchangeable with the repository/adapter paths.
+ */
+@Slf4j
+public class BinaryDataCodec implements RedisCodec<String, BinaryData>, ToByteBufEncoder<String, BinaryData> {
+
+    // kryo overhead: class id, id string and array length
+    private static final int KRYO_OVERHEAD_ESTIMATE = 16;
+
+    private final KryoRedisSerializer<BinaryData> kryoRedisSerializer = new KryoRedisSerializer<>();
+    private final PlaygroundProperties.BinaryFormat format;
+
+    public BinaryDataCodec() {
+        this(PlaygroundProperties.BinaryFormat.KRYO);
+    }
+
+    public BinaryDataCodec(PlaygroundProperties.BinaryFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public String decodeKey(ByteBuffer bytes) {
+        return StringCodec.UTF8.decodeKey(bytes);
+    }
+
+    @Override
+    public BinaryData decodeValue(ByteBuffer bytes) {
+        if (BinaryDataFormat.isVersioned(bytes))
+            return BinaryDataFormat.decode(bytes);
+        return kryoRedisSerializer.deserialize(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(String key) {
+        return StringCodec.UTF8.encodeKey(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(BinaryData value) {
+        // only used if lettuce does not pick up the ByteBuf encoder below
+        if (value == null)
+            return ByteBuffer.allocate(0);
+        var buffer = ByteBuffer.allocateDirect(estimateSize(value));
+        write(value, buffer);
+        return buffer.flip();
+    }
+
+    @Override
+    public void encodeKey(String key, ByteBuf target) {
+        StringCodec.UTF8.encodeKey(key, target);
+    }
+
+    @Override
+    public void encodeValue(BinaryData value, ByteBuf target) {
+        if (value == null)
+            return;
+        target.ensureWritable(estimateSize(value));
+        if (target.nioBufferCount() != 1) {
+            // composite buffer, can't expose a single writable region
+            target.writeBytes(encodeValue(value));
+            return;
+        }
+        // nio view shares the memory of the netty buffer, so kryo writes directly into it
+        var region = target.nioBuffer(target.writerIndex(), target.writableBytes());
+        var written = write(value, region);
+        target.writerIndex(target.writerIndex() + written);
+    }
+
+    private int write(BinaryData value, ByteBuffer target) {
+        if (format == PlaygroundProperties.BinaryFormat.VERSIONED)
+            return BinaryDataFormat.encode(value, target);
+        return kryoRedisSerializer.serialize(value, target);
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        if (keyOrValue instanceof BinaryData binaryData) {
+            if (format == PlaygroundProperties.BinaryFormat.VERSIONED)
+                return BinaryDataFormat.encodedSize(binaryData);
+            var dataLength = binaryData.getData() != null ? binaryData.getData().length : 0;
+            // worst case utf-8 for the id
+            return dataLength + binaryData.getId().length() * 3 + KRYO_OVERHEAD_ESTIMATE;
+        }
+        return StringCodec.UTF8.estimateSize(keyOrValue);
+    }
+}
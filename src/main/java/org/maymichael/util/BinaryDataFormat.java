@@ -0,0 +1,204 @@
+package org.maymichael.util;
+
+import org.maymichael.data.BinaryData;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact, versioned binary format for {@link BinaryData}.
+ * <p>
+ * Layout: {@code magic(2) version(1) field*}, each field is {@code tag(varint) payload}, where the tag is
+ * {@code fieldNumber << 3 | wireType}. Readers skip fields they don't know (by wire type), so fields can be
+ * added without breaking older readers, and missing fields just stay at their default for newer readers.
+ * The version is only bumped for incompatible changes.
+ * <p>
+ * Unlike kryo, nothing depends on class registration order or the field layout of the java class.
+ */
+public final class BinaryDataFormat {
+
+    // 0xBD can never be the first byte kryo writes for our (few) registered classes, '{' starts json
+    private static final byte MAGIC_0 = (byte) 0xBD;
+    private static final byte MAGIC_1 = (byte) 0xDA;
+    public static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_LENGTH_DELIMITED = 2;
+
+    // field numbers, never reuse a number once it was released
+    static final int FIELD_ID = 1;
+    static final int FIELD_DATA = 2;
+
+    private BinaryDataFormat() {
+    }
+
+    public static boolean isVersioned(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    public static boolean isVersioned(ByteBuffer buffer) {
+        var position = buffer.position();
+        return buffer.remaining() >= HEADER_SIZE && buffer.get(position) == MAGIC_0 && buffer.get(position + 1) == MAGIC_1;
+    }
+
+    /**
+     * Exact encoded size, used to allocate the output buffer once.
+     */
+    public static int encodedSize(BinaryData value) {
+        var size = HEADER_SIZE;
+        var idLength = utf8Length(value.getId());
+        size += varIntSize(tag(FIELD_ID, WIRE_LENGTH_DELIMITED)) + varIntSize(idLength) + idLength;
+        if (value.getData() != null) {
+            size += varIntSize(tag(FIELD_DATA, WIRE_LENGTH_DELIMITED)) + varIntSize(value.getData().length) + value.getData().length;
+        }
+        return size;
+    }
+
+    public static byte[] encode(BinaryData value) {
+        var buffer = ByteBuffer.allocate(encodedSize(value));
+        encode(value, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes into the given buffer at its current position, the caller has to make sure there is
+     * {@link #encodedSize(BinaryData)} space left.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(BinaryData value, ByteBuffer target) {
+        var start = target.position();
+        target.put(MAGIC_0).put(MAGIC_1).put(VERSION);
+        var id = value.getId().getBytes(StandardCharsets.UTF_8);
+        writeVarInt(target, tag(FIELD_ID, WIRE_LENGTH_DELIMITED));
+        writeVarInt(target, id.length);
+        target.put(id);
+        if (value.getData() != null) {
+            writeVarInt(target, tag(FIELD_DATA, WIRE_LENGTH_DELIMITED));
+            writeVarInt(target, value.getData().length);
+            target.put(value.getData());
+        }
+        return target.position() - start;
+    }
+
+    public static BinaryData decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes from the buffer's current position. Only the id string and the payload array are allocated.
+     */
+    public static BinaryData decode(ByteBuffer source) {
+        if (!isVersioned(source))
+            throw new SerializationException("not a versioned binary data value");
+        source.position(source.position() + 2);
+        // isVersioned checked that the whole header (magic and version) is there
+        var version = source.get();
+        if (version > VERSION)
+            throw new SerializationException("unsupported binary data format version " + version);
+
+        var result = new BinaryData();
+        while (source.hasRemaining()) {
+            var tag = readVarInt(source);
+            var fieldNumber = tag >>> 3;
+            var wireType = tag & 0x7;
+            switch (fieldNumber) {
+                case FIELD_ID -> {
+                    var length = readLength(source, wireType);
+                    result.setId(new String(readBytes(source, length), StandardCharsets.UTF_8));
+                }
+                case FIELD_DATA -> {
+                    var length = readLength(source, wireType);
+                    result.setData(readBytes(source, length));
+                }
+                default -> skip(source, wireType);
+            }
+        }
+        return result;
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return fieldNumber << 3 | wireType;
+    }
+
+    private static int readLength(ByteBuffer source, int wireType) {
+        if (wireType != WIRE_LENGTH_DELIMITED)
+            throw new SerializationException("unexpected wire type " + wireType);
+        var length = readVarInt(source);
+        if (length < 0 || length > source.remaining())
+            throw new SerializationException("invalid field length " + length);
+        return length;
+    }
+
+    private static byte[] readBytes(ByteBuffer source, int length) {
+        var bytes = new byte[length];
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static void skip(ByteBuffer source, int wireType) {
+        switch (wireType) {
+            case WIRE_VARINT -> readVarInt(source);
+            case WIRE_LENGTH_DELIMITED -> {
+                var length = readLength(source, wireType);
+                source.position(source.position() + length);
+            }
+            default -> throw new SerializationException("unknown wire type " + wireType);
+        }
+    }
+
+    static void writeVarInt(ByteBuffer target, int value) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    static int readVarInt(ByteBuffer source) {
+        var result = 0;
+        for (var shift = 0; shift < 32; shift += 7) {
+            if (!source.hasRemaining())
+                throw new SerializationException("truncated varint");
+            var b = source.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new SerializationException("malformed varint");
+    }
+
+    static int varIntSize(int value) {
+        var size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        var length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                // valid pairs take 4 bytes, lone surrogates are replaced with '?'
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -3,6 +3,7 @@
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.maymichael.config.PlaygroundProperties;
 import org.maymichael.data.BinaryData;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.convert.WritingConverter;
@@ -12,14 +13,22 @@
 public class BinaryDataToBytesConverter implements Converter<BinaryData, byte[]> {
 
     private final KryoRedisSerializer<BinaryData> kryoRedisSerializer;
+    private final PlaygroundProperties.BinaryFormat format;
 
     public BinaryDataToBytesConverter() {
+        this(PlaygroundProperties.BinaryFormat.KRYO);
+    }
+
+    public BinaryDataToBytesConverter(PlaygroundProperties.BinaryFormat format) {
         kryoRedisSerializer = new KryoRedisSerializer<>();
+        this.format = format;
     }
 
     @Override
     @SneakyThrows
     public byte[] convert(@NonNull BinaryData value) {
+        if (format == PlaygroundProperties.BinaryFormat.VERSIONED)
+            return BinaryDataFormat.encode(value);
         return kryoRedisSerializer.serialize(value);
     }
 }
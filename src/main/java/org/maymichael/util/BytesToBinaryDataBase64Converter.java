@@ -26,6 +26,7 @@ public BytesToBinaryDataBase64Converter(final ObjectMapper objectMapper) {
     @Override
     @SneakyThrows
     public BinaryDataBase64 convert(byte @NonNull [] value) {
-        return serializer.deserialize(value);
+        var decoded = BinaryDataBase64Format.decode(value);
+        return decoded != null ? decoded : serializer.deserialize(value);
     }
 }
\ No newline at end of file
@@ -20,6 +20,9 @@ public BytesToBinaryDataConverter() {
     @Override
     @SneakyThrows
     public BinaryData convert(byte @NonNull [] value) {
+        // always accept both formats, so pods writing either one can read each other's data
+        if (BinaryDataFormat.isVersioned(value))
+            return BinaryDataFormat.decode(value);
         return kryoRedisSerializer.deserialize(value);
     }
 }
\ No newline at end of file
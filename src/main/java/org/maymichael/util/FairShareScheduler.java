@@ -0,0 +1,146 @@
+package org.maymichael.util;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weighted fair sharing of a capacity (e.g. bytes in flight to the cluster) between tenants, weighted fair queueing
+ * by finish tag: every acquire gets a start tag {@code max(virtual time, last finish of the tenant)} and a finish
+ * tag {@code start + cost / weight}, waiting acquires are granted in finish tag order and the virtual time advances
+ * to the start tag of the last grant. A tenant that submits a lot only competes with its own backlog, a tenant with
+ * little traffic gets its (weighted) share right away. Without competition anyone can use all of it.
+ * <p>
+ * Thread safe, {@link Share#acquire(long)} blocks (meant for virtual threads).
+ */
+public class FairShareScheduler {
+
+    private static final class Waiter {
+        private final long cost;
+        private final long start;
+        private final long finish;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(long cost, long start, long finish, long sequence, Condition condition) {
+            this.cost = cost;
+            this.start = start;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+
+    private final long capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>((a, b) -> a.finish != b.finish
+            ? Long.compare(a.finish, b.finish) : Long.compare(a.sequence, b.sequence));
+    private long inUse;
+    private long virtualTime;
+    private long sequence;
+
+    public FairShareScheduler(long capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return capacity currently acquired
+     */
+    public long inUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of acquires waiting for capacity
+     */
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller holds the lock
+    private void grantWaiters() {
+        // strictly in tag order, a big head waits for room instead of being overtaken forever
+        Waiter head;
+        while ((head = waiters.peek()) != null && inUse + head.cost <= capacity) {
+            waiters.poll();
+            inUse += head.cost;
+            virtualTime = Math.max(virtualTime, head.start);
+            head.granted = true;
+            head.condition.signal();
+        }
+    }
+
+    public Share share(String name, int weight) {
+        if (weight <= 0)
+            throw new IllegalArgumentException("invalid weight " + weight + " for " + name);
+        return new Share(name, weight);
+    }
+
+    public class Share {
+        private final String name;
+        private final int weight;
+        // guarded by lock
+        private long lastFinish;
+
+        private Share(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Waits until the cost fits into the capacity and it's this share's turn.
+         *
+         * @return the cost actually taken (capped at the capacity), pass it to {@link #release(long)}
+         */
+        public long acquire(long cost) {
+            var taken = Math.clamp(cost, 1, capacity);
+            lock.lock();
+            try {
+                var start = Math.max(virtualTime, lastFinish);
+                lastFinish = start + Math.max(1, taken / weight);
+                if (waiters.isEmpty() && inUse + taken <= capacity) {
+                    inUse += taken;
+                    virtualTime = start;
+                    return taken;
+                }
+                var waiter = new Waiter(taken, start, lastFinish, sequence++, lock.newCondition());
+                waiters.add(waiter);
+                // the new waiter may be the head and fit right away
+                grantWaiters();
+                while (!waiter.granted) {
+                    waiter.condition.awaitUninterruptibly();
+                }
+                return taken;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void release(long taken) {
+            lock.lock();
+            try {
+                inUse -= taken;
+                grantWaiters();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
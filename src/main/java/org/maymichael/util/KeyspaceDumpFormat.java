@@ -0,0 +1,200 @@
+package org.maymichael.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File format of keyspace exports.
+ * <p>
+ * Layout: {@code magic(3) version(1) record*}, written strictly sequentially (streamable) and read back through
+ * memory mapped windows. Every length is a fixed width big endian int, so a reader knows the size of each part
+ * before it touches it. Records:
+ * <ul>
+ * <li>{@code DUMP: kind(1) key pttl(8) payload} - server side DUMP, restored with RESTORE</li>
+ * <li>{@code HASH: kind(1) key pttl(8) count(4) (field value)*}</li>
+ * <li>{@code SET: kind(1) key pttl(8) count(4) member*}</li>
+ * </ul>
+ * where {@code key}, {@code payload}, {@code field}, {@code value} and {@code member} are {@code length(4) bytes}
+ * and pttl is the remaining time to live in milliseconds, -1 without expiry.
+ */
+public final class KeyspaceDumpFormat {
+
+    private static final byte[] MAGIC = {'V', 'K', 'D'};
+    public static final byte VERSION = 1;
+    public static final String FILE_SUFFIX = ".vkd";
+
+    private static final byte KIND_DUMP = 1;
+    private static final byte KIND_HASH = 2;
+    private static final byte KIND_SET = 3;
+
+    public static final long NO_EXPIRY = -1;
+
+    private KeyspaceDumpFormat() {
+    }
+
+    public sealed interface Entry permits Dump, Hash, Members {
+        byte[] key();
+
+        long pttl();
+    }
+
+    public record Dump(byte[] key, long pttl, byte[] payload) implements Entry {
+    }
+
+    public record Hash(byte[] key, long pttl, Map<byte[], byte[]> fields) implements Entry {
+    }
+
+    public record Members(byte[] key, long pttl, List<byte[]> members) implements Entry {
+    }
+
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        // bytes of the current record (DataOutputStream#size is an int and saturates on big files)
+        private long written;
+
+        public Writer(Path file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 20));
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+
+        /**
+         * @return bytes written
+         */
+        public long write(Entry entry) throws IOException {
+            written = 0;
+            switch (entry) {
+                case Dump dump -> {
+                    writeHeader(KIND_DUMP, dump);
+                    writeBytes(dump.payload());
+                }
+                case Hash hash -> {
+                    writeHeader(KIND_HASH, hash);
+                    writeCount(hash.fields().size());
+                    for (var field : hash.fields().entrySet()) {
+                        writeBytes(field.getKey());
+                        writeBytes(field.getValue());
+                    }
+                }
+                case Members members -> {
+                    writeHeader(KIND_SET, members);
+                    writeCount(members.members().size());
+                    for (var member : members.members()) {
+                        writeBytes(member);
+                    }
+                }
+            }
+            return written;
+        }
+
+        private void writeHeader(byte kind, Entry entry) throws IOException {
+            out.writeByte(kind);
+            writeBytes(entry.key());
+            out.writeLong(entry.pttl());
+            written += 1 + Long.BYTES;
+        }
+
+        private void writeCount(int count) throws IOException {
+            out.writeInt(count);
+            written += Integer.BYTES;
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            written += Integer.BYTES + bytes.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+        // mapped at once, records never span more than the window (redis values are at most 512 MB)
+        private static final long WINDOW = 1L << 30;
+
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        public Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, size));
+            var magic = new byte[MAGIC.length];
+            ensure(MAGIC.length + 1).get(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IOException("not a keyspace dump: " + file);
+            var version = window.get();
+            if (version != VERSION)
+                throw new IOException("unsupported keyspace dump version " + version + ": " + file);
+        }
+
+        /**
+         * @return the next entry or {@literal null} at the end of the file
+         */
+        public Entry next() throws IOException {
+            if (windowStart + window.position() >= size)
+                return null;
+            var kind = ensure(1).get();
+            var key = readBytes();
+            var pttl = ensure(Long.BYTES).getLong();
+            return switch (kind) {
+                case KIND_DUMP -> new Dump(key, pttl, readBytes());
+                case KIND_HASH -> {
+                    var count = ensure(Integer.BYTES).getInt();
+                    var fields = new LinkedHashMap<byte[], byte[]>(Math.max(4, count * 4 / 3 + 1));
+                    for (int i = 0; i < count; i++) {
+                        fields.put(readBytes(), readBytes());
+                    }
+                    yield new Hash(key, pttl, fields);
+                }
+                case KIND_SET -> {
+                    var count = ensure(Integer.BYTES).getInt();
+                    var members = new byte[count][];
+                    for (int i = 0; i < count; i++) {
+                        members[i] = readBytes();
+                    }
+                    yield new Members(key, pttl, List.of(members));
+                }
+                default -> throw new IOException("unknown record kind " + kind + " at " + (windowStart + window.position() - 1));
+            };
+        }
+
+        private byte[] readBytes() throws IOException {
+            var length = ensure(Integer.BYTES).getInt();
+            var bytes = new byte[length];
+            ensure(length).get(bytes);
+            return bytes;
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes)
+                return window;
+            // remap starting at the current position
+            windowStart += window.position();
+            var length = Math.min(Math.max(WINDOW, bytes), size - windowStart);
+            if (length < bytes)
+                throw new EOFException("truncated keyspace dump at " + windowStart);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            return window;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.maymichael.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lock free, self sizing pool of pre-registered {@link Kryo} instances.
+ * <p>
+ * Kryo's own {@code Pool} keeps a fixed number of instances, anything above that (parallel streams, virtual threads)
+ * creates a new instance, registers all classes and throws it away again. This pool instead tracks the peak number of
+ * concurrent users per window and keeps that many instances idle (bounded by min/max idle), so bursts reuse warm
+ * instances. No {@code synchronized} and no thread locals, so it does not pin or leak with virtual threads.
+ */
+@Slf4j
+public class KryoPool {
+
+    public record Stats(long hits, long misses, long created, long discarded,
+                        int idle, int inUse, int peakInUse, int targetIdle) {
+    }
+
+    private static final Duration DEFAULT_WINDOW = Duration.ofSeconds(30);
+
+    private final Supplier<Kryo> factory;
+    private final ConcurrentLinkedQueue<Kryo> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger windowPeak = new AtomicInteger();
+    private final AtomicInteger targetIdle = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    private volatile int minIdle;
+    private volatile int maxIdle;
+    private volatile long windowNanos = DEFAULT_WINDOW.toNanos();
+
+    public KryoPool(Supplier<Kryo> factory, int minIdle, int maxIdle) {
+        this.factory = factory;
+        resize(minIdle, maxIdle);
+    }
+
+    public void resize(int minIdle, int maxIdle) {
+        if (minIdle < 0 || maxIdle < minIdle)
+            throw new IllegalArgumentException("invalid pool bounds min=" + minIdle + " max=" + maxIdle);
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        targetIdle.set(clamp(windowPeak.get()));
+    }
+
+    public void setWindow(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * Creates instances until {@code count} are idle (bounded by max idle), so the first requests don't pay for
+     * class registration.
+     */
+    public void prewarm(int count) {
+        var target = Math.min(count, maxIdle);
+        targetIdle.accumulateAndGet(target, Math::max);
+        while (idleCount.get() < target) {
+            idle.offer(create());
+            idleCount.incrementAndGet();
+        }
+    }
+
+    public Kryo obtain() {
+        var current = inUse.incrementAndGet();
+        windowPeak.accumulateAndGet(current, Math::max);
+        // grow right away, so instances created during a burst are kept for the next one
+        targetIdle.accumulateAndGet(clamp(current), Math::max);
+
+        var kryo = idle.poll();
+        if (kryo != null) {
+            idleCount.decrementAndGet();
+            hits.increment();
+            return kryo;
+        }
+        misses.increment();
+        return create();
+    }
+
+    public void free(Kryo kryo) {
+        inUse.decrementAndGet();
+        maybeRollWindow();
+        if (idleCount.incrementAndGet() <= targetIdle.get()) {
+            idle.offer(kryo);
+            return;
+        }
+        // above what we observed to be needed, let it go
+        idleCount.decrementAndGet();
+        discarded.increment();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), created.sum(), discarded.sum(),
+                idleCount.get(), inUse.get(), windowPeak.get(), targetIdle.get());
+    }
+
+    private Kryo create() {
+        created.increment();
+        return factory.get();
+    }
+
+    private void maybeRollWindow() {
+        var now = System.nanoTime();
+        var start = windowStart.get();
+        if (now - start < windowNanos || !windowStart.compareAndSet(start, now))
+            return;
+        // size for the peak of the last window, start the next window at the current concurrency
+        // (shrinks one window after the load is gone)
+        var peak = windowPeak.getAndSet(inUse.get());
+        var target = clamp(peak);
+        var previous = targetIdle.getAndSet(target);
+        if (previous != target)
+            log.debug("kryo pool resized - targetIdle={} previous={} peak={}", target, previous, peak);
+        // drop surplus idle instances
+        while (idleCount.get() > target && idle.poll() != null) {
+            idleCount.decrementAndGet();
+            discarded.increment();
+        }
+    }
+
+    private int clamp(int value) {
+        return Math.max(minIdle, Math.min(maxIdle, value));
+    }
+}
@@ -1,31 +1,39 @@
 package org.maymichael.util;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.util.Pool;
 import org.maymichael.data.BinaryData;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Component;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 @Component
 public class KryoRedisSerializer<T> implements RedisSerializer<T> {
 
-    private static final Pool<Kryo> kryoPool = new Pool<>(true, false, 8) {
-        protected Kryo create() {
-            Kryo kryo = new Kryo();
-            kryo.setRegistrationRequired(true);
-            // add all classes we want to serialize here
-            // with registration required, we have to declare what we want to serialize
-            // but its faster
-            kryo.register(BinaryData.class);
-            kryo.register(byte[].class);
-            return kryo;
-        }
-    };
+    // shared by all serializer instances, sized by RedisConfig from playground.kryo.*
+    private static final KryoPool kryoPool = new KryoPool(KryoRedisSerializer::createKryo, 8, 256);
+
+    private static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(true);
+        // add all classes we want to serialize here
+        // with registration required, we have to declare what we want to serialize
+        // but its faster
+        kryo.register(BinaryData.class);
+        kryo.register(byte[].class);
+        return kryo;
+    }
+
+    public static KryoPool pool() {
+        return kryoPool;
+    }
 
     @Override
     public byte[] serialize(T value) throws SerializationException {
@@ -59,4 +67,52 @@ public T deserialize(byte[] bytes) throws SerializationException {
             kryoPool.free(kryo);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Serializes straight into the given buffer (heap or direct), starting at its current position.
+     * No intermediate byte array is created, the buffer position is advanced by the written bytes.
+     *
+     * @return number of bytes written
+     */
+    public int serialize(T value, ByteBuffer target) throws SerializationException {
+        if (value == null)
+            return 0;
+
+        var kryo = kryoPool.obtain();
+        try {
+            var start = target.position();
+            // max buffer size == capacity, kryo will not try to grow the (caller owned) buffer
+            var output = new ByteBufferOutput(target, target.capacity());
+            kryo.writeClassAndObject(output, value);
+            var end = output.position();
+            target.position(end);
+            return end - start;
+        } catch (KryoException e) {
+            throw new SerializationException("could not serialize into buffer", e);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * Deserializes directly from the given buffer (e.g. a pooled netty buffer exposed by lettuce),
+     * starting at its current position. Only the payload itself gets copied onto the heap.
+     */
+    public T deserialize(ByteBuffer source) throws SerializationException {
+        if (source == null || !source.hasRemaining())
+            return null;
+
+        var kryo = kryoPool.obtain();
+        try {
+            var input = new ByteBufferInput(source);
+            //noinspection unchecked
+            var value = (T) kryo.readClassAndObject(input);
+            source.position(input.position());
+            return value;
+        } catch (KryoException e) {
+            throw new SerializationException("could not deserialize from buffer", e);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+}
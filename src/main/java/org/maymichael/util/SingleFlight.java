@@ -0,0 +1,87 @@
+package org.maymichael.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller loads, everyone arriving while that load runs gets
+ * its result (the same instance, nothing is copied). Once a load completed the key is forgotten, the next call
+ * loads again, so results are never older than the load that was running when they were requested.
+ * <p>
+ * That load may have started before the caller's own write though, so a caller that has to read its own writes
+ * must not go through here (it would undo read-your-writes, e.g. session consistency).
+ * <p>
+ * Results are shared between callers, they must not be modified (e.g. return unmodifiable collections).
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Loads on the calling thread, unless a load of the key is running already, then waits for that one.
+     */
+    public V run(K key, Supplier<V> load) {
+        var promise = new CompletableFuture<V>();
+        var running = inFlight.putIfAbsent(key, promise);
+        if (running != null)
+            return join(running);
+        try {
+            var value = load.get();
+            // remove first, a caller arriving after completion has to load again
+            inFlight.remove(key, promise);
+            promise.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #run(Object, Supplier)}, every caller gets its own future (cancelling it doesn't
+     * affect the others).
+     */
+    public CompletableFuture<V> execute(K key, Function<K, CompletableFuture<V>> load) {
+        var promise = new CompletableFuture<V>();
+        var running = inFlight.putIfAbsent(key, promise);
+        if (running != null)
+            return running.copy();
+        try {
+            load.apply(key).whenComplete((value, error) -> {
+                inFlight.remove(key, promise);
+                if (error != null)
+                    promise.completeExceptionally(error);
+                else
+                    promise.complete(value);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.copy();
+    }
+
+    /**
+     * @return keys currently loading
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // same exception the loading caller got
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.springframework.data.redis.core;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.data.redis.core.index.Indexed;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Alternative storage for simple {@link Indexed} properties, replacing {@link IndexWriter}.
+ * <ul>
+ * <li>high cardinality paths (default): one set per value, same key as spring data ({@code keyspace:path:value}),
+ * so derived queries keep working. Small sets stay in the compact listpack encoding on the server.</li>
+ * <li>low cardinality paths (configured): instead of one huge set per value, members {@code value\0id} in sorted sets
+ * (all scores 0, queried by lex range), spread over {@code shards} keys {@code keyspace:path:zidx:n}, so a hot value
+ * is no longer a single key on a single node.</li>
+ * <li>no {@code keyspace:id:idx} helper set per entity: the indexed values are part of the entity hash anyway, so
+ * cleanup reads them from there ({@link #indexedPaths(String)}).</li>
+ * </ul>
+ * Bitmaps would need dense integer ids, our ids are uuids.
+ * <p>
+ * High cardinality values are deliberately not bucketed (several values sharing one set): a plain set can't be
+ * queried for one value without scanning the whole bucket, and spring data's derived queries ({@code findAllByTid})
+ * read {@code keyspace:path:value} directly. The per value sets are small, so the server keeps them in listpack
+ * encoding, which is what bucketing would save. A high cardinality path that needs to be spread anyway can be listed
+ * as low cardinality, the sharded sorted sets work for any number of values.
+ * <p>
+ * Low cardinality paths are not visible to spring data's query engine, use
+ * {@link PipelinedRedisKeyValueAdapter#findIds(String, String, Object)} for those.
+ */
+public class CompactIndexWriter {
+
+    private static final byte SEPARATOR = 0;
+    private static final byte[] MAX_SUFFIX = {SEPARATOR, (byte) 0xFF};
+    private static final String SHARD_INFIX = "zidx:";
+
+    private final RedisMappingContext mappingContext;
+    private final RedisConverter converter;
+    private final Set<String> lowCardinalityPaths;
+    private final int shards;
+    private final Map<String, List<String>> indexedPathsByKeyspace = new ConcurrentHashMap<>();
+
+    /**
+     * @param lowCardinalityPaths {@code keyspace:path} or just {@code path} (any keyspace)
+     */
+    public CompactIndexWriter(RedisMappingContext mappingContext, RedisConverter converter,
+                              Collection<String> lowCardinalityPaths, int shards) {
+        this.mappingContext = mappingContext;
+        this.converter = converter;
+        this.lowCardinalityPaths = Set.copyOf(lowCardinalityPaths);
+        this.shards = shards;
+    }
+
+    boolean isLowCardinality(String keyspace, String path) {
+        return lowCardinalityPaths.contains(path) || lowCardinalityPaths.contains(keyspace + ":" + path);
+    }
+
+    private byte[] toBytes(Object value) {
+        return value instanceof byte[] bytes ? bytes : converter.getConversionService().convert(value, byte[].class);
+    }
+
+    private byte[] shardKey(String keyspace, String path, byte[] key) {
+        return shardKey(keyspace, path, ClusterSlotHashUtil.calculateSlot(key) % shards);
+    }
+
+    private static byte[] shardKey(String keyspace, String path, int shard) {
+        return (keyspace + ":" + path + ":" + SHARD_INFIX + shard).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] member(byte[] value, byte[] key) {
+        return ByteUtils.concatAll(value, new byte[]{SEPARATOR}, key);
+    }
+
+    /**
+     * Top level {@link Indexed} properties of the entity stored in the keyspace, their hash fields carry the
+     * indexed values.
+     */
+    public List<String> indexedPaths(String keyspace) {
+        return indexedPathsByKeyspace.computeIfAbsent(keyspace, ks -> {
+            var paths = new ArrayList<String>();
+            for (RedisPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+                if (!ks.equals(entity.getKeySpace()))
+                    continue;
+                for (RedisPersistentProperty property : entity) {
+                    if (property.isAnnotationPresent(Indexed.class))
+                        paths.add(property.getName());
+                }
+            }
+            return List.copyOf(paths);
+        });
+    }
+
+    public void addIndexes(PipelinedRedisKeyValueAdapter.CommandSink sink, byte[] key, Iterable<IndexedData> indexedData) {
+        for (IndexedData data : indexedData) {
+            if (!(data instanceof SimpleIndexedPropertyValue simple) || simple.getValue() == null)
+                continue;
+            add(sink, data.getKeyspace(), data.getIndexName(), key, toBytes(simple.getValue()));
+        }
+    }
+
+    private void add(PipelinedRedisKeyValueAdapter.CommandSink sink, String keyspace, String path, byte[] key, byte[] value) {
+        addIndex(sink, keyspace, path, toBytes(keyspace + ":" + path + ":"), key, value);
+    }
+
+    /**
+     * @param prefix {@code keyspace:path:}, the key prefix of high cardinality paths
+     */
+    void addIndex(PipelinedRedisKeyValueAdapter.CommandSink sink, String keyspace, String path, byte[] prefix,
+                  byte[] key, byte[] value) {
+        if (isLowCardinality(keyspace, path)) {
+            sink.zAdd(shardKey(keyspace, path, key), 0, member(value, key));
+        } else {
+            sink.sAdd(ByteUtils.concat(prefix, value), key);
+        }
+    }
+
+    /**
+     * Removes the entity from the indexes of its previous values.
+     *
+     * @param oldValues values of {@link #indexedPaths(String)} as stored in the entity hash, same order,
+     *                  {@literal null} entries for missing fields
+     */
+    public void removeIndexes(PipelinedRedisKeyValueAdapter.CommandSink sink, String keyspace, byte[] key, List<byte[]> oldValues) {
+        var paths = indexedPaths(keyspace);
+        for (int i = 0; i < paths.size() && i < oldValues.size(); i++) {
+            var value = oldValues.get(i);
+            if (value == null)
+                continue;
+            var path = paths.get(i);
+            if (isLowCardinality(keyspace, path)) {
+                sink.zRem(shardKey(keyspace, path, key), member(value, key));
+            } else {
+                sink.sRem(ByteUtils.concat(toBytes(keyspace + ":" + path + ":"), value), key);
+            }
+        }
+    }
+
+    /**
+     * Keys to query (by lex range {@link #rangeStart(Object)} - {@link #rangeEnd(Object)}) for all ids with a
+     * given value of a low cardinality path.
+     */
+    List<byte[]> shardKeys(String keyspace, String path) {
+        var keys = new ArrayList<byte[]>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            keys.add(shardKey(keyspace, path, shard));
+        }
+        return keys;
+    }
+
+    byte[] rangeStart(Object value) {
+        return ByteUtils.concat(toBytes(value), new byte[]{SEPARATOR});
+    }
+
+    byte[] rangeEnd(Object value) {
+        return ByteUtils.concat(toBytes(value), MAX_SUFFIX);
+    }
+
+    static byte[] idFromMember(byte[] member, byte[] rangeStart) {
+        return Arrays.copyOfRange(member, rangeStart.length, member.length);
+    }
+}
@@ -0,0 +1,159 @@
+package org.springframework.data.redis.core;
+
+import org.springframework.data.redis.core.convert.GeoIndexedPropertyValue;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.lang.Nullable;
+
+import java.util.*;
+
+/**
+ * An entity converted for writing: keys, hash and index values as bytes, see
+ * {@link PipelinedRedisKeyValueAdapter#encode(Object, Object)}. Replaces {@code RedisData} on the write path, the
+ * hash is written as is (no {@code Bucket} with String paths, no {@code rawMap()} copy).
+ */
+public final class EncodedEntity {
+
+    private String keyspace;
+    private byte[] binKeyspace;
+    private String id;
+    private byte[] key;
+    private byte[] objectKey;
+    @Nullable
+    private Long timeToLive;
+    private final Map<byte[], byte[]> hash = new LinkedHashMap<>();
+
+    // simple indexes, same position in all three lists
+    final List<String> indexPaths = new ArrayList<>(2);
+    final List<byte[]> indexPrefixes = new ArrayList<>(2);
+    final List<byte[]> indexValues = new ArrayList<>(2);
+    final List<GeoIndexedPropertyValue> geoIndexes = new ArrayList<>(0);
+
+    void setKeys(String keyspace, byte[] binKeyspace, String id, byte[] key, byte[] objectKey) {
+        this.keyspace = keyspace;
+        this.binKeyspace = binKeyspace;
+        this.id = id;
+        this.key = key;
+        this.objectKey = objectKey;
+    }
+
+    void setTimeToLive(@Nullable Long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    void addIndex(String path, byte[] prefix, byte[] value) {
+        indexPaths.add(path);
+        indexPrefixes.add(prefix);
+        indexValues.add(value);
+    }
+
+    /**
+     * Makes the instance reusable, the hash keeps its capacity.
+     */
+    void clear() {
+        keyspace = null;
+        binKeyspace = null;
+        id = null;
+        key = null;
+        objectKey = null;
+        timeToLive = null;
+        hash.clear();
+        indexPaths.clear();
+        indexPrefixes.clear();
+        indexValues.clear();
+        geoIndexes.clear();
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    byte[] getBinKeyspace() {
+        return binKeyspace;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public byte[] getObjectKey() {
+        return objectKey;
+    }
+
+    @Nullable
+    public Long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public boolean expires() {
+        return timeToLive != null && timeToLive > 0;
+    }
+
+    public Map<byte[], byte[]> getHash() {
+        return hash;
+    }
+
+    /**
+     * @return key of every simple index the entity is added to ({@code keyspace:path:value}), in the order of the
+     *         indexed properties
+     */
+    public List<byte[]> getIndexKeys() {
+        var keys = new ArrayList<byte[]>(indexPrefixes.size());
+        for (int i = 0; i < indexPrefixes.size(); i++) {
+            keys.add(ByteUtils.concat(indexPrefixes.get(i), indexValues.get(i)));
+        }
+        return keys;
+    }
+
+    /**
+     * @return bytes of the hash (fields and values), which dominate what a put sends over the wire
+     */
+    public long size() {
+        long size = 0;
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            size += entry.getKey().length + (entry.getValue() != null ? entry.getValue().length : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Same keys, hash, ttl and index values, regardless of order.
+     */
+    boolean matches(EncodedEntity other) {
+        return Objects.equals(keyspace, other.keyspace) && Objects.equals(id, other.id)
+                && Arrays.equals(objectKey, other.objectKey) && Objects.equals(timeToLive, other.timeToLive)
+                && sameEntries(hash, other.hash) && sameEntries(indexes(), other.indexes())
+                && geoIndexes.size() == other.geoIndexes.size();
+    }
+
+    private Map<byte[], byte[]> indexes() {
+        var indexes = new HashMap<byte[], byte[]>();
+        for (int i = 0; i < indexPrefixes.size(); i++) {
+            indexes.put(indexPrefixes.get(i), indexValues.get(i));
+        }
+        return indexes;
+    }
+
+    private static boolean sameEntries(Map<byte[], byte[]> a, Map<byte[], byte[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        // byte[] keys compare by identity, so match them by content
+        outer:
+        for (Map.Entry<byte[], byte[]> entry : a.entrySet()) {
+            for (Map.Entry<byte[], byte[]> candidate : b.entrySet()) {
+                if (Arrays.equals(entry.getKey(), candidate.getKey())) {
+                    if (!Arrays.equals(entry.getValue(), candidate.getValue())) {
+                        return false;
+                    }
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+}
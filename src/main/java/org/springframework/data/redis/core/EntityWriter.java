@@ -0,0 +1,226 @@
+package org.springframework.data.redis.core;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.convert.CustomConversions;
+import org.springframework.data.mapping.AssociationHandler;
+import org.springframework.data.redis.core.index.GeoIndexed;
+import org.springframework.data.redis.core.index.Indexed;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Writes entities of one type straight into an {@link EncodedEntity}, compiled once from the
+ * {@link RedisPersistentEntity}: field names and index key prefixes as bytes, property values read through method
+ * handles. Same hash as {@code MappingRedisConverter}, without building a {@code Bucket} of String paths, copying it
+ * with {@code rawMap()} and walking every property (and every byte of a byte[]) in {@code PathIndexResolver}.
+ * <p>
+ * Supported are flat entities: properties of types with a custom write converter to byte[] (Strings, numbers,
+ * enums, {@code BinaryData}, ..), byte[] and nested entities made of those. Indexes come from top level
+ * {@link Indexed} properties only (like {@link CompactIndexWriter#indexedPaths(String)}). Everything else
+ * (collections, maps, references, geo indexes, ..) isn't compiled and stays with the converter, as do instances
+ * whose runtime types differ from the declared ones ({@code _class} hints).
+ */
+final class EntityWriter {
+
+    static final byte[] TYPE_FIELD = "_class".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @param type     declared type, boxed
+     * @param children fields of a nested entity, {@literal null} for values
+     */
+    private record Field(byte[] name, MethodHandle getter, Class<?> type, boolean raw,
+                         @Nullable String indexPath, @Nullable byte[] indexPrefix, @Nullable Field[] children) {
+    }
+
+    private final Class<?> type;
+    private final String keyspace;
+    private final byte[] binKeyspace;
+    private final byte[] keyPrefix;
+    private final byte[] typeAlias;
+    private final MethodHandle idGetter;
+    private final Field[] fields;
+    private final RedisMappingContext mappingContext;
+    private final ConversionService conversionService;
+    private volatile boolean verified;
+
+    private EntityWriter(RedisPersistentEntity<?> entity, MethodHandle idGetter, Field[] fields,
+                         RedisMappingContext mappingContext, ConversionService conversionService) {
+        this.type = entity.getType();
+        this.keyspace = entity.getKeySpace();
+        this.binKeyspace = keyspace.getBytes(StandardCharsets.UTF_8);
+        this.keyPrefix = (keyspace + ":").getBytes(StandardCharsets.UTF_8);
+        // what DefaultRedisTypeMapper writes: the type alias, or the class name
+        var alias = entity.getTypeAlias();
+        this.typeAlias = (alias.isPresent() ? String.valueOf(alias.getValue()) : type.getName()).getBytes(StandardCharsets.UTF_8);
+        this.idGetter = idGetter;
+        this.fields = fields;
+        this.mappingContext = mappingContext;
+        this.conversionService = conversionService;
+    }
+
+    /**
+     * @return {@literal null} if the entity isn't supported
+     */
+    @Nullable
+    static EntityWriter compile(RedisPersistentEntity<?> entity, RedisMappingContext mappingContext,
+                                CustomConversions customConversions, ConversionService conversionService) {
+        var type = entity.getType();
+        if (entity.getKeySpace() == null || entity.getIdProperty() == null || customConversions.hasCustomWriteTarget(type)
+                || entity.getTypeInformation().isCollectionLike() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        var idGetter = getter(entity.getRequiredIdProperty());
+        var fields = compileFields(entity, "", true, mappingContext, customConversions);
+        if (idGetter == null || fields == null) {
+            return null;
+        }
+        return new EntityWriter(entity, idGetter, fields, mappingContext, conversionService);
+    }
+
+    @Nullable
+    private static Field[] compileFields(RedisPersistentEntity<?> entity, String path, boolean topLevel,
+                                         RedisMappingContext mappingContext, CustomConversions customConversions) {
+        var associations = new boolean[1];
+        entity.doWithAssociations((AssociationHandler<RedisPersistentProperty>) association -> associations[0] = true);
+        if (associations[0]) {
+            return null;
+        }
+        var fields = new ArrayList<Field>();
+        for (RedisPersistentProperty property : entity) {
+            var propertyPath = path + property.getName();
+            var name = propertyPath.getBytes(StandardCharsets.UTF_8);
+            var getter = getter(property);
+            var propertyType = ClassUtils.resolvePrimitiveIfNecessary(property.getType());
+            var indexed = property.isAnnotationPresent(Indexed.class);
+            if (getter == null || property.isAnnotationPresent(GeoIndexed.class) || (indexed && !topLevel)) {
+                return null;
+            }
+            if (propertyType == byte[].class && !indexed) {
+                fields.add(new Field(name, getter, propertyType, true, null, null, null));
+            } else if (writesBytes(customConversions, propertyType)) {
+                var indexPrefix = indexed ? (entity.getKeySpace() + ":" + propertyPath + ":").getBytes(StandardCharsets.UTF_8) : null;
+                fields.add(new Field(name, getter, propertyType, false, indexed ? propertyPath : null, indexPrefix, null));
+            } else if (property.isEntity() && !property.isCollectionLike() && !property.isMap() && !indexed) {
+                var children = compileFields(mappingContext.getRequiredPersistentEntity(property), propertyPath + ".",
+                        false, mappingContext, customConversions);
+                if (children == null) {
+                    return null;
+                }
+                fields.add(new Field(name, getter, propertyType, false, null, null, children));
+            } else {
+                return null;
+            }
+        }
+        return fields.toArray(Field[]::new);
+    }
+
+    private static boolean writesBytes(CustomConversions customConversions, Class<?> type) {
+        return customConversions.getCustomWriteTarget(type).filter(target -> ClassUtils.isAssignable(byte[].class, target)).isPresent();
+    }
+
+    @Nullable
+    private static MethodHandle getter(RedisPersistentProperty property) {
+        try {
+            var lookup = MethodHandles.privateLookupIn(property.getOwner().getType(), MethodHandles.lookup());
+            MethodHandle handle;
+            if (property.getField() != null && !property.usePropertyAccess()) {
+                handle = lookup.unreflectGetter(property.getField());
+            } else if (property.getGetter() != null) {
+                handle = lookup.unreflect(property.getGetter());
+            } else {
+                return null;
+            }
+            return handle.asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Object get(MethodHandle getter, Object source) {
+        try {
+            return (Object) getter.invokeExact(source);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return {@literal true} once the output was compared to the converter's
+     */
+    boolean isVerified() {
+        return verified;
+    }
+
+    void markVerified() {
+        verified = true;
+    }
+
+    /**
+     * @return {@literal false} if the instance can't be written without the converter, the target has to be cleared
+     */
+    boolean write(Object source, EncodedEntity target) {
+        if (source.getClass() != type) {
+            return false;
+        }
+        var identifier = get(idGetter, source);
+        if (identifier == null) {
+            return false;
+        }
+        var id = identifier instanceof String string ? string : conversionService.convert(identifier, String.class);
+        var key = id.getBytes(StandardCharsets.UTF_8);
+        target.setKeys(keyspace, binKeyspace, id, key, ByteUtils.concat(keyPrefix, key));
+
+        target.getHash().put(TYPE_FIELD, typeAlias);
+        if (!writeFields(fields, source, target)) {
+            return false;
+        }
+        var ttl = mappingContext.getTimeToLiveAccessor().getTimeToLive(source);
+        if (ttl != null && ttl > 0) {
+            target.setTimeToLive(ttl);
+        }
+        return true;
+    }
+
+    private boolean writeFields(Field[] fields, Object source, EncodedEntity target) {
+        for (Field field : fields) {
+            var value = get(field.getter(), source);
+            if (value == null) {
+                continue;
+            }
+            // a subtype would need a _class hint
+            if (value.getClass() != field.type()) {
+                return false;
+            }
+            if (field.children() != null) {
+                if (!writeFields(field.children(), value, target)) {
+                    return false;
+                }
+                continue;
+            }
+            var bytes = field.raw() ? (byte[]) value : conversionService.convert(value, byte[].class);
+            target.getHash().put(field.name(), bytes);
+            if (field.indexPath() != null) {
+                // index values are converted the same way, share the array
+                target.addIndex(field.indexPath(), field.indexPrefix(), bytes);
+            }
+        }
+        return true;
+    }
+}
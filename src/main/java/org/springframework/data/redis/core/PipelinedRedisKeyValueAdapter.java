@@ -1,13 +1,72 @@
 package org.springframework.data.redis.core;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.convert.*;
 import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.util.ByteUtils;
 import org.springframework.lang.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+@Slf4j
 public class PipelinedRedisKeyValueAdapter extends RedisKeyValueAdapter {
 
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final byte[] INDEX_HELPER_SUFFIX = ":idx".getBytes(StandardCharsets.UTF_8);
+
+    // KEYS[1] = entity, ARGV[1] = reference field
+    // returns the reference of the entity if this call deleted it, so concurrent deletes release it only once
+    private static final byte[] DELETE_REFERENCING = """
+            local reference = redis.call('HGET', KEYS[1], ARGV[1])
+            if redis.call('DEL', KEYS[1]) == 0 then
+                return false
+            end
+            return reference
+            """.getBytes(StandardCharsets.UTF_8);
+
+    // KEYS[1] = entity, ARGV[1] = reference field, ARGV[2..n] = new hash (field, value, ...)
+    // returns the reference of the replaced entity, concurrent replaces each get the one they replaced
+    private static final byte[] REPLACE_REFERENCING = """
+            local reference = redis.call('HGET', KEYS[1], ARGV[1])
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+            return reference
+            """.getBytes(StandardCharsets.UTF_8);
+
     private final RedisConverter converter;
+    private final RedisOperations<?, ?> redisOps;
+    private final RedisMappingContext mappingContext;
+    private final org.springframework.data.convert.CustomConversions customConversions;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    @Nullable
+    private CompactIndexWriter compactIndexWriter;
+
+    // precompiled writer per entity type, empty if the type is written by the converter
+    private final Map<Class<?>, Optional<EntityWriter>> entityWriters = new ConcurrentHashMap<>();
+    // "keyspace" and "keyspace:" as bytes
+    private final Map<String, byte[]> binKeyspaces = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> keyPrefixes = new ConcurrentHashMap<>();
+    // key prefixes of the indexes written through the converter
+    private final Map<String, byte[]> indexPrefixes = new ConcurrentHashMap<>();
+    // see putOnConnection
+    private final ThreadLocal<EncodedEntity> scratch = ThreadLocal.withInitial(EncodedEntity::new);
+    // hash field per keyspace whose values are released when an entity is deleted, see addReferenceField
+    private final Map<String, ReferenceField> referenceFields = new ConcurrentHashMap<>();
+
+    private record ReferenceField(String name, byte[] field, Consumer<List<String>> release) {
+    }
 
     public PipelinedRedisKeyValueAdapter(RedisTemplate<?, ?> redisTemplate, RedisMappingContext mappingContext,
                                          @Nullable org.springframework.data.convert.CustomConversions customConversions) {
@@ -15,10 +74,60 @@ public PipelinedRedisKeyValueAdapter(RedisTemplate<?, ?> redisTemplate, RedisMap
 
         MappingRedisConverter mappingConverter = new MappingRedisConverter(mappingContext,
                 new PathIndexResolver(mappingContext), new ReferenceResolverImpl(redisTemplate));
-        mappingConverter
-                .setCustomConversions(customConversions == null ? new RedisCustomConversions() : customConversions);
+        this.customConversions = customConversions == null ? new RedisCustomConversions() : customConversions;
+        mappingConverter.setCustomConversions(this.customConversions);
         mappingConverter.afterPropertiesSet();
         this.converter = mappingConverter;
+        this.redisOps = redisTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    /**
+     * @param batchSize max number of entities per pipeline used by the bulk operations, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1 - batchSize=" + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Switches index storage from spring data's {@link IndexWriter} to the given {@link CompactIndexWriter}.
+     * Single entity put/delete are routed through the bulk operations then, since spring data's implementation
+     * relies on the index helper sets the compact storage does not write. Partial updates are not supported and fail
+     * with an {@link UnsupportedOperationException}.
+     */
+    public void setCompactIndexWriter(@Nullable CompactIndexWriter compactIndexWriter) {
+        this.compactIndexWriter = compactIndexWriter;
+    }
+
+    /**
+     * Hands the values of {@code field} of deleted or overwritten entities of the keyspace to {@code release} once
+     * they are gone, e.g. to drop references to blobs. Every stored entity owns the reference in its field, the
+     * writer has to take it before the write (see {@code BlobStore#storeAll}).
+     * <p>
+     * Single entity puts and deletes and {@link #deleteAllOf(String)} of the keyspace are routed through
+     * {@link #putAll(Map)} and {@link #deleteAll(Collection, String)} then, which read the field and replace or delete
+     * the entity in one script. Partial updates of the field and entities with a time to live are rejected, the value
+     * would never be released. The insert only {@link #putOnSink} and {@link #putOnConnection} must not overwrite
+     * entities of the keyspace.
+     */
+    public void addReferenceField(String keyspace, String field, Consumer<List<String>> release) {
+        referenceFields.put(keyspace, new ReferenceField(field, toBytes(field), release));
+    }
+
+    // spring data's put and delete paths neither know about compact indexes nor about reference fields
+    private boolean usesOwnWrites(String keyspace) {
+        return compactIndexWriter != null || referenceFields.containsKey(keyspace);
+    }
+
+    /**
+     * @return the converter used by {@link #putOnConnection(RedisConnection, Object, Object)}, separate from
+     *         {@link #getConverter()}.
+     */
+    public RedisConverter getPipelineConverter() {
+        return converter;
     }
 
     /**
@@ -32,8 +141,69 @@ private boolean expires(RedisData data) {
         return data.getTimeToLive() != null && data.getTimeToLive() > 0;
     }
 
-    public Object putOnConnection(RedisConnection connection, Object id, Object item) {
+    /**
+     * Receiver of the write commands for one entity. Used to put entities on connections that are not a spring
+     * {@link RedisConnection}, e.g. dedicated per node lettuce connections.
+     */
+    public interface CommandSink {
+
+        void hMSet(byte[] key, Map<byte[], byte[]> hashes);
+
+        void sAdd(byte[] key, byte[] member);
+
+        void expire(byte[] key, long seconds);
+
+        void geoAdd(byte[] key, Point point, byte[] member);
+
+        void sRem(byte[] key, byte[] member);
+
+        void zAdd(byte[] key, double score, byte[] member);
+
+        void zRem(byte[] key, byte[] member);
+    }
+
+    private record ConnectionSink(RedisConnection connection) implements CommandSink {
+
+        @Override
+        public void hMSet(byte[] key, Map<byte[], byte[]> hashes) {
+            connection.hashCommands().hMSet(key, hashes);
+        }
+
+        @Override
+        public void sAdd(byte[] key, byte[] member) {
+            connection.setCommands().sAdd(key, member);
+        }
+
+        @Override
+        public void expire(byte[] key, long seconds) {
+            connection.keyCommands().expire(key, seconds);
+        }
+
+        @Override
+        public void geoAdd(byte[] key, Point point, byte[] member) {
+            connection.geoCommands().geoAdd(key, point, member);
+        }
+
+        @Override
+        public void sRem(byte[] key, byte[] member) {
+            connection.setCommands().sRem(key, member);
+        }
+
+        @Override
+        public void zAdd(byte[] key, double score, byte[] member) {
+            connection.zSetCommands().zAdd(key, score, member);
+        }
 
+        @Override
+        public void zRem(byte[] key, byte[] member) {
+            connection.zSetCommands().zRem(key, member);
+        }
+    }
+
+    /**
+     * Converts the entity with {@link #getPipelineConverter()}, as spring data does.
+     */
+    public RedisData toRedisData(Object id, Object item) {
         RedisData rdo = item instanceof RedisData ? (RedisData) item : new RedisData();
         if (!(item instanceof RedisData)) {
             converter.write(item, rdo);
@@ -42,21 +212,524 @@ public Object putOnConnection(RedisConnection connection, Object id, Object item
         if (rdo.getId() == null) {
             rdo.setId(converter.getConversionService().convert(id, String.class));
         }
+        return rdo;
+    }
 
-        byte[] key = toBytes(rdo.getId());
-        byte[] objectKey = createKey(rdo.getKeyspace(), rdo.getId());
+    /**
+     * Converts the entity into what a put writes, with its precompiled {@link EntityWriter} if the type has one,
+     * with {@link #getPipelineConverter()} otherwise. The result can be passed to the put methods instead of the
+     * entity, e.g. to look at its size first.
+     */
+    public EncodedEntity encode(Object id, Object item) {
+        return item instanceof EncodedEntity encoded ? encoded : encode(id, item, new EncodedEntity());
+    }
+
+    /**
+     * @return an encoder for batched writes, see {@link Encoder}
+     */
+    public Encoder encoder() {
+        return new Encoder();
+    }
+
+    /**
+     * Encodes like {@link #encode(Object, Object)}, into {@link EncodedEntity} instances that are reused after
+     * {@link #reset()}. Reset once a batch is written (e.g. per pipeline), so a write split into several pipelines
+     * only allocates entities and hashes for its largest batch. Not thread safe.
+     */
+    public final class Encoder {
+
+        private final List<EncodedEntity> entities = new ArrayList<>();
+        private int used;
+
+        private Encoder() {
+        }
+
+        public EncodedEntity encode(Object id, Object item) {
+            if (item instanceof EncodedEntity encoded) {
+                return encoded;
+            }
+            if (used == entities.size()) {
+                entities.add(new EncodedEntity());
+            }
+            return PipelinedRedisKeyValueAdapter.this.encode(id, item, entities.get(used++));
+        }
+
+        /**
+         * Makes all entities encoded so far reusable, they must not be used afterwards.
+         */
+        public void reset() {
+            for (int i = 0; i < used; i++) {
+                entities.get(i).clear();
+            }
+            used = 0;
+        }
+    }
 
-        connection.hashCommands().hMSet(objectKey, rdo.getBucket().rawMap());
+    private EncodedEntity encode(Object id, Object item, EncodedEntity target) {
+        EntityWriter writer = item instanceof RedisData ? null : entityWriter(item.getClass());
+        if (writer != null) {
+            if (writer.write(item, target)) {
+                return writer.isVerified() ? target : verify(writer, id, item, target);
+            }
+            target.clear();
+        }
+        return fromRedisData(toRedisData(id, item), target);
+    }
 
-        connection.setCommands().sAdd(toBytes(rdo.getKeyspace()), key);
+    /**
+     * @return {@literal true} if entities of the type are written by a precompiled (and verified) writer
+     */
+    public boolean isPrecompiled(Class<?> type) {
+        EntityWriter writer = entityWriter(type);
+        return writer != null && writer.isVerified();
+    }
+
+    @Nullable
+    private EntityWriter entityWriter(Class<?> type) {
+        return entityWriters.computeIfAbsent(type, t -> {
+            RedisPersistentEntity<?> entity = mappingContext.getPersistentEntity(t);
+            return Optional.ofNullable(entity == null ? null
+                    : EntityWriter.compile(entity, mappingContext, customConversions, converter.getConversionService()));
+        }).orElse(null);
+    }
 
+    // the first write of a type is compared to the converter's, if they differ the type stays with the converter
+    private EncodedEntity verify(EntityWriter writer, Object id, Object item, EncodedEntity written) {
+        EncodedEntity expected = fromRedisData(toRedisData(id, item), new EncodedEntity());
+        if (written.matches(expected)) {
+            writer.markVerified();
+            return written;
+        }
+        log.warn("precompiled writer differs from the converter, using the converter - type={}", writer.getType().getName());
+        entityWriters.put(writer.getType(), Optional.empty());
+        return expected;
+    }
+
+    private EncodedEntity fromRedisData(RedisData rdo, EncodedEntity target) {
+        byte[] key = toBytes(rdo.getId());
+        target.setKeys(rdo.getKeyspace(), binKeyspace(rdo.getKeyspace()), rdo.getId(), key, createKey(rdo.getKeyspace(), key));
+        target.getHash().putAll(rdo.getBucket().rawMap());
         if (expires(rdo)) {
-            connection.keyCommands().expire(objectKey, rdo.getTimeToLive());
+            target.setTimeToLive(rdo.getTimeToLive());
+        }
+        for (IndexedData indexedData : rdo.getIndexedData()) {
+            if (indexedData instanceof SimpleIndexedPropertyValue simple) {
+                if (simple.getValue() != null) {
+                    target.addIndex(simple.getIndexName(), indexPrefixes.computeIfAbsent(simple.getKeyPrefix(), this::toBytes),
+                            toBytes(simple.getValue()));
+                }
+            } else if (indexedData instanceof GeoIndexedPropertyValue geo) {
+                if (geo.getValue() != null) {
+                    target.geoIndexes.add(geo);
+                }
+            } else {
+                throw new IllegalArgumentException("Cannot write index data for unknown index type %s".formatted(indexedData.getClass()));
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Same as {@link #putOnConnection(RedisConnection, Object, Object)}, but emits the commands to the given sink.
+     * Insert only, existing hashes and index entries are not cleaned up.
+     * <p>
+     * Sinks may hold on to the hash until their commands are sent, so unlike putOnConnection every call encodes
+     * into a new {@link EncodedEntity}.
+     */
+    public Object putOnSink(CommandSink sink, Object id, Object item) {
+        write(sink, encode(id, item));
+        return item;
+    }
+
+    /**
+     * Writes the entity, or an {@link EncodedEntity}, insert only. Entities are encoded into a per thread scratch
+     * instance, a connection has taken the hash apart once the command is created.
+     */
+    public Object putOnConnection(RedisConnection connection, Object id, Object item) {
+        if (item instanceof EncodedEntity encoded) {
+            write(new ConnectionSink(connection), encoded);
+            return item;
+        }
+        EncodedEntity entity = scratch.get();
+        try {
+            write(new ConnectionSink(connection), encode(id, item, entity));
+        } finally {
+            entity.clear();
+        }
+        return item;
+    }
+
+    private void write(CommandSink sink, EncodedEntity entity) {
+        if (entity.expires()) {
+            rejectExpiringReference(entity.getKeyspace());
+        }
+        byte[] key = entity.getKey();
+        byte[] objectKey = entity.getObjectKey();
+
+        sink.hMSet(objectKey, entity.getHash());
+
+        sink.sAdd(entity.getBinKeyspace(), key);
+
+        if (entity.expires()) {
+            sink.expire(objectKey, entity.getTimeToLive());
+        }
+
+        if (compactIndexWriter != null) {
+            for (int i = 0; i < entity.indexValues.size(); i++) {
+                compactIndexWriter.addIndex(sink, entity.getKeyspace(), entity.indexPaths.get(i),
+                        entity.indexPrefixes.get(i), key, entity.indexValues.get(i));
+            }
+            return;
+        }
+        if (entity.indexValues.isEmpty() && entity.geoIndexes.isEmpty()) {
+            return;
+        }
+
+        // equivalent of IndexWriter#createIndexes, keeps track of the indexes used for the object in the helper set
+        byte[] helperKey = indexHelperKey(entity.getKeyspace(), key);
+        for (int i = 0; i < entity.indexValues.size(); i++) {
+            byte[] indexKey = ByteUtils.concat(entity.indexPrefixes.get(i), entity.indexValues.get(i));
+            sink.sAdd(indexKey, key);
+            sink.sAdd(helperKey, indexKey);
+        }
+        for (GeoIndexedPropertyValue geo : entity.geoIndexes) {
+            byte[] indexKey = indexPrefixes.computeIfAbsent(geo.getKeyPrefix(), this::toBytes);
+            sink.geoAdd(indexKey, geo.getPoint(), key);
+            sink.sAdd(helperKey, indexKey);
+        }
+    }
+
+    private record PendingWrite(RedisData rdo, byte[] key, byte[] objectKey, int slot) {
+    }
+
+    private void rejectExpiringReference(String keyspace) {
+        ReferenceField referenceField = referenceFields.get(keyspace);
+        if (referenceField != null) {
+            throw new IllegalArgumentException("entities with reference field " + referenceField.name()
+                    + " must not expire, the reference would never be released - keyspace=" + keyspace);
+        }
+    }
+
+    // only values the caller actually removed, after they are gone (a failed write or delete keeps its references)
+    private static void release(@Nullable ReferenceField referenceField, List<Object> references) {
+        List<String> released = new ArrayList<>();
+        for (Object reference : references) {
+            if (reference instanceof byte[] value) {
+                released.add(new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        if (referenceField != null && !released.isEmpty()) {
+            referenceField.release().accept(released);
+        }
+    }
+
+    private byte[] binKeyspace(String keyspace) {
+        return binKeyspaces.computeIfAbsent(keyspace, this::toBytes);
+    }
+
+    private byte[] keyPrefix(String keyspace) {
+        return keyPrefixes.computeIfAbsent(keyspace, ks -> toBytes(ks + ":"));
+    }
+
+    private byte[] indexHelperKey(String keyspace, byte[] key) {
+        return ByteUtils.concatAll(keyPrefix(keyspace), key, INDEX_HELPER_SUFFIX);
+    }
+
+    private List<String> toStringIds(Collection<?> ids) {
+        return ids.stream()
+                .map(id -> Objects.requireNonNull(converter.getConversionService().convert(id, String.class)))
+                .toList();
+    }
+
+    /**
+     * Sorts the items by slot (stable, items of the same slot keep their order) and splits them into chunks of at
+     * most {@code batchSize}.
+     */
+    static <T> List<List<T>> slotGroupedChunks(List<T> items, ToIntFunction<T> slot, int batchSize) {
+        // neighbouring slots mostly live on the same node, so each pipeline talks to as few nodes as possible
+        var sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingInt(slot));
+        var chunks = new ArrayList<List<T>>();
+        for (int i = 0; i < sorted.size(); i += batchSize) {
+            chunks.add(sorted.subList(i, Math.min(sorted.size(), i + batchSize)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads, in one pipeline, what is needed to remove the given entities from their current indexes:
+     * the index helper set, or with compact indexes the indexed fields of the entity hash.
+     *
+     * @return one entry per key, {@literal null} if nothing had to be read
+     */
+    private List<Object> readIndexState(String keyspace, List<byte[]> keys) {
+        List<String> paths = compactIndexWriter != null ? compactIndexWriter.indexedPaths(keyspace) : List.of();
+        if (compactIndexWriter != null && paths.isEmpty()) {
+            return Collections.nCopies(keys.size(), null);
+        }
+        byte[][] fields = paths.stream().map(this::toBytes).toArray(byte[][]::new);
+        return redisOps.executePipelined((RedisCallback<?>) connection -> {
+            for (byte[] key : keys) {
+                if (compactIndexWriter != null) {
+                    connection.hashCommands().hMGet(createKey(keyspace, key), fields);
+                } else {
+                    connection.setCommands().sMembers(indexHelperKey(keyspace, key));
+                }
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    @Override
+    public byte[] createKey(String keyspace, String id) {
+        return createKey(keyspace, toBytes(id));
+    }
+
+    private byte[] createKey(String keyspace, byte[] key) {
+        return ByteUtils.concat(keyPrefix(keyspace), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeFromIndexes(RedisConnection connection, String keyspace, byte[] key, @Nullable Object indexState) {
+        if (compactIndexWriter != null) {
+            if (indexState != null) {
+                compactIndexWriter.removeIndexes(new ConnectionSink(connection), keyspace, key, (List<byte[]>) indexState);
+            }
+            return;
+        }
+        if (indexState != null) {
+            ((Set<byte[]>) indexState).forEach(indexKey -> connection.setCommands().sRem(indexKey, key));
+        }
+        connection.keyCommands().del(indexHelperKey(keyspace, key));
+    }
+
+    private void addToIndexes(RedisConnection connection, byte[] key, Set<IndexedData> indexedData) {
+        if (compactIndexWriter != null) {
+            compactIndexWriter.addIndexes(new ConnectionSink(connection), key, indexedData);
+            return;
+        }
+        new IndexWriter(connection, converter).createIndexes(key, indexedData);
+    }
+
+    /**
+     * Pipelined equivalent of calling {@link #put(Object, Object, String)} for every entry: existing hashes are
+     * replaced and the entity is removed from the indexes it was in before.
+     * <p>
+     * Runs two pipelines per batch, one reading the current index state of all entities, one writing. Only set based
+     * (simple) indexes are cleaned up, geo indexes are not supported. Keyspaces with a reference field replace the
+     * hashes in a third pipeline first, see {@link #addReferenceField(String, String, Consumer)}.
+     */
+    public void putAll(Map<?, ?> itemsById) {
+        var writesByKeyspace = new LinkedHashMap<String, List<PendingWrite>>();
+        itemsById.forEach((id, item) -> {
+            RedisData rdo = toRedisData(id, item);
+            if (expires(rdo)) {
+                rejectExpiringReference(rdo.getKeyspace());
+            }
+            byte[] objectKey = createKey(rdo.getKeyspace(), rdo.getId());
+            writesByKeyspace.computeIfAbsent(rdo.getKeyspace(), ks -> new ArrayList<>())
+                    .add(new PendingWrite(rdo, toBytes(rdo.getId()), objectKey, ClusterSlotHashUtil.calculateSlot(objectKey)));
+        });
+
+        writesByKeyspace.forEach((keyspace, writes) -> {
+            byte[] binKeyspace = binKeyspace(keyspace);
+            ReferenceField referenceField = referenceFields.get(keyspace);
+            for (List<PendingWrite> chunk : slotGroupedChunks(writes, PendingWrite::slot, batchSize)) {
+                // 1. indexes the entities are currently in, replaces IndexWriter's read inside the write path
+                List<Object> indexState = readIndexState(keyspace, chunk.stream().map(PendingWrite::key).toList());
+
+                // 2. with a reference field: replace the hashes and get the replaced references in one step
+                List<Object> replaced = referenceField == null ? List.of() : redisOps.executePipelined((RedisCallback<?>) connection -> {
+                    chunk.forEach(write -> connection.scriptingCommands().eval(REPLACE_REFERENCING, ReturnType.VALUE, 1,
+                            replaceArguments(write, referenceField)));
+                    return null;
+                }, RedisSerializer.byteArray());
+
+                // 3. replace the hashes (unless done already) and move the index entries
+                redisOps.executePipelined((RedisCallback<?>) connection -> {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        PendingWrite write = chunk.get(i);
+                        RedisData rdo = write.rdo();
+
+                        removeFromIndexes(connection, keyspace, write.key(), indexState.get(i));
+                        if (referenceField == null) {
+                            connection.keyCommands().del(write.objectKey());
+                            connection.hashCommands().hMSet(write.objectKey(), rdo.getBucket().rawMap());
+                        }
+                        connection.setCommands().sAdd(binKeyspace, write.key());
+                        if (expires(rdo)) {
+                            connection.keyCommands().expire(write.objectKey(), rdo.getTimeToLive());
+                        }
+                        addToIndexes(connection, write.key(), rdo.getIndexedData());
+                    }
+                    return null;
+                });
+                release(referenceField, replaced);
+            }
+        });
+    }
+
+    private static byte[][] replaceArguments(PendingWrite write, ReferenceField referenceField) {
+        Map<byte[], byte[]> hash = write.rdo().getBucket().rawMap();
+        byte[][] arguments = new byte[2 + hash.size() * 2][];
+        arguments[0] = write.objectKey();
+        arguments[1] = referenceField.field();
+        int i = 2;
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            arguments[i++] = entry.getKey();
+            arguments[i++] = entry.getValue();
+        }
+        return arguments;
+    }
+
+    /**
+     * Pipelined equivalent of {@link #get(Object, String, Class)} for every id, in the order of the ids. Missing
+     * entities are skipped.
+     */
+    public <T> List<T> getAll(Collection<?> ids, String keyspace, Class<T> type) {
+        var stringIds = toStringIds(ids);
+        // chunks are grouped by slot, results are put back at the position of their id
+        int[] slots = stringIds.stream().mapToInt(id -> ClusterSlotHashUtil.calculateSlot(createKey(keyspace, id))).toArray();
+        List<Integer> positions = IntStream.range(0, stringIds.size()).boxed().toList();
+        List<T> values = new ArrayList<>(Collections.nCopies(stringIds.size(), null));
+        for (List<Integer> chunk : slotGroupedChunks(positions, position -> slots[position], batchSize)) {
+            List<Object> hashes = redisOps.executePipelined((RedisCallback<?>) connection -> {
+                chunk.forEach(position -> connection.hashCommands().hGetAll(createKey(keyspace, stringIds.get(position))));
+                return null;
+            }, RedisSerializer.byteArray());
+
+            for (int i = 0; i < chunk.size(); i++) {
+                int position = chunk.get(i);
+                @SuppressWarnings("unchecked")
+                T value = readHash(keyspace, stringIds.get(position), (Map<byte[], byte[]>) hashes.get(i), type);
+                values.set(position, value);
+            }
+        }
+        values.removeIf(Objects::isNull);
+        return values;
+    }
+
+    /**
+     * Reads an entity from its raw hash, e.g. fetched with HGETALL on a connection outside of spring data.
+     *
+     * @return {@literal null} for a missing (empty) hash
+     */
+    @Nullable
+    public <T> T readHash(String keyspace, String id, @Nullable Map<byte[], byte[]> hash, Class<T> type) {
+        if (hash == null || hash.isEmpty()) {
+            return null;
         }
-        IndexWriter indexWriter = new IndexWriter(connection, converter);
-        indexWriter.createIndexes(key, rdo.getIndexedData());
+        RedisData data = new RedisData(hash);
+        data.setId(id);
+        data.setKeyspace(keyspace);
+        return converter.read(type, data);
+    }
+
+    /**
+     * Pipelined equivalent of {@link #delete(Object, String)} for every id, including index cleanup.
+     */
+    public void deleteAll(Collection<?> ids, String keyspace) {
+        var stringIds = toStringIds(ids);
+        byte[] binKeyspace = binKeyspace(keyspace);
+        ReferenceField referenceField = referenceFields.get(keyspace);
+        for (List<String> chunk : slotGroupedChunks(stringIds, id -> ClusterSlotHashUtil.calculateSlot(createKey(keyspace, id)), batchSize)) {
+            List<byte[]> keys = chunk.stream().map(this::toBytes).toList();
+            List<Object> indexState = readIndexState(keyspace, keys);
+            // with a reference field: read and delete in one step, only the caller that deleted the entity gets it
+            List<Object> references = referenceField == null ? List.of() : redisOps.executePipelined((RedisCallback<?>) connection -> {
+                keys.forEach(key -> connection.scriptingCommands().eval(DELETE_REFERENCING, ReturnType.VALUE, 1,
+                        createKey(keyspace, key), referenceField.field()));
+                return null;
+            }, RedisSerializer.byteArray());
+
+            redisOps.executePipelined((RedisCallback<?>) connection -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] key = keys.get(i);
+                    removeFromIndexes(connection, keyspace, key, indexState.get(i));
+                    if (referenceField == null) {
+                        connection.keyCommands().del(createKey(keyspace, key));
+                    }
+                    connection.setCommands().sRem(binKeyspace, key);
+                }
+                return null;
+            });
+            release(referenceField, references);
+        }
+    }
 
+    @Override
+    public void deleteAllOf(String keyspace) {
+        if (!usesOwnWrites(keyspace)) {
+            super.deleteAllOf(keyspace);
+            return;
+        }
+        // entity by entity (pipelined), so index entries and references are cleaned up like on single deletes
+        Set<byte[]> ids = redisOps.execute((RedisCallback<Set<byte[]>>) connection -> connection.setCommands().sMembers(binKeyspace(keyspace)));
+        if (ids != null && !ids.isEmpty()) {
+            deleteAll(ids.stream().map(id -> new String(id, StandardCharsets.UTF_8)).toList(), keyspace);
+        }
+    }
+
+    @Override
+    public Object put(Object id, Object item, String keyspace) {
+        if (!usesOwnWrites(keyspace)) {
+            return super.put(id, item, keyspace);
+        }
+        putAll(Collections.singletonMap(id, item));
         return item;
     }
 
-}
\ No newline at end of file
+    @Override
+    public void update(PartialUpdate<?> update) {
+        String keyspace = mappingContext.getRequiredPersistentEntity(update.getTarget()).getKeySpace();
+        if (compactIndexWriter != null) {
+            // spring data moves index entries through the helper sets, which compact storage does not write
+            throw new UnsupportedOperationException("partial updates are not supported with compact indexes - keyspace=" + keyspace);
+        }
+        ReferenceField referenceField = keyspace == null ? null : referenceFields.get(keyspace);
+        if (referenceField != null && update.getPropertyUpdates().stream()
+                .anyMatch(propertyUpdate -> referenceField.name().equals(propertyUpdate.getPropertyPath()))) {
+            throw new UnsupportedOperationException("partial updates of reference field " + referenceField.name()
+                    + " are not supported - keyspace=" + keyspace);
+        }
+        super.update(update);
+    }
+
+    @Override
+    public <T> T delete(Object id, String keyspace, Class<T> type) {
+        if (!usesOwnWrites(keyspace)) {
+            return super.delete(id, keyspace, type);
+        }
+        T value = get(id, keyspace, type);
+        if (value != null) {
+            deleteAll(List.of(id), keyspace);
+        }
+        return value;
+    }
+
+    /**
+     * Ids of all entities with the given value of an indexed property, works with both index storages.
+     */
+    public Set<byte[]> findIds(String keyspace, String path, Object value) {
+        if (compactIndexWriter == null || !compactIndexWriter.isLowCardinality(keyspace, path)) {
+            byte[] indexKey = ByteUtils.concat(toBytes(keyspace + ":" + path + ":"), toBytes(value));
+            return redisOps.execute((RedisCallback<Set<byte[]>>) connection -> connection.setCommands().sMembers(indexKey));
+        }
+        byte[] start = compactIndexWriter.rangeStart(value);
+        byte[] end = compactIndexWriter.rangeEnd(value);
+        List<byte[]> shardKeys = compactIndexWriter.shardKeys(keyspace, path);
+        List<Object> members = redisOps.executePipelined((RedisCallback<?>) connection -> {
+            shardKeys.forEach(shardKey -> connection.zSetCommands().zRangeByLex(shardKey, Range.closed(start, end)));
+            return null;
+        }, RedisSerializer.byteArray());
+        Set<byte[]> ids = new LinkedHashSet<>();
+        for (Object shardMembers : members) {
+            @SuppressWarnings("unchecked")
+            Collection<byte[]> memberSet = (Collection<byte[]>) shardMembers;
+            if (memberSet != null) {
+                memberSet.forEach(member -> ids.add(CompactIndexWriter.idFromMember(member, start)));
+            }
+        }
+        return ids;
+    }
+}
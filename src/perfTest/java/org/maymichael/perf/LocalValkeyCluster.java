@@ -0,0 +1,166 @@
+package org.maymichael.perf;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.SlotHash;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Throwaway cluster of local {@code valkey-server} (or {@code redis-server}) processes, primaries only, no
+ * persistence. Slots are assigned and nodes introduced through plain cluster commands, so neither docker nor
+ * {@code valkey-cli} are needed.
+ * <p>
+ * The binary is taken from {@code -Dvalkey.server}, {@code VALKEY_SERVER} or the {@code PATH}.
+ */
+@Slf4j
+public class LocalValkeyCluster implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final List<Integer> ports = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final Path directory;
+
+    private LocalValkeyCluster(Path directory) {
+        this.directory = directory;
+    }
+
+    public static Optional<Path> findServerBinary() {
+        var configured = Optional.ofNullable(System.getProperty("valkey.server"))
+                .or(() -> Optional.ofNullable(System.getenv("VALKEY_SERVER")))
+                .filter(value -> !value.isBlank())
+                .map(Path::of);
+        if (configured.isPresent())
+            return configured.filter(Files::isExecutable);
+        var path = Optional.ofNullable(System.getenv("PATH")).orElse("");
+        for (var binary : List.of("valkey-server", "redis-server")) {
+            for (var dir : path.split(File.pathSeparator)) {
+                var candidate = Path.of(dir, binary);
+                if (Files.isExecutable(candidate))
+                    return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static LocalValkeyCluster start(Path binary, int nodes) throws IOException, InterruptedException {
+        var cluster = new LocalValkeyCluster(Files.createTempDirectory("valkey-perf"));
+        try {
+            for (int i = 0; i < nodes; i++) {
+                cluster.startNode(binary, freePort());
+            }
+            cluster.form();
+            return cluster;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void startNode(Path binary, int port) throws IOException {
+        var process = new ProcessBuilder(binary.toString(),
+                "--port", Integer.toString(port),
+                "--bind", "127.0.0.1",
+                "--cluster-enabled", "yes",
+                "--cluster-config-file", "nodes-" + port + ".conf",
+                "--dir", directory.toString(),
+                "--save", "",
+                "--appendonly", "no",
+                // the payloads are big, the defaults would disconnect pipelined clients in bulk tests
+                "--client-output-buffer-limit", "normal 0 0 0")
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve("node-" + port + ".log").toFile())
+                .start();
+        processes.add(process);
+        ports.add(port);
+    }
+
+    private void form() throws InterruptedException {
+        var client = RedisClient.create();
+        try {
+            var connections = new ArrayList<StatefulRedisConnection<String, String>>();
+            for (var port : ports) {
+                connections.add(connectWhenUp(client, port));
+            }
+            // even slot ranges per node, then let every node meet the first one
+            var perNode = SlotHash.SLOT_COUNT / ports.size();
+            for (int i = 0; i < ports.size(); i++) {
+                var from = i * perNode;
+                var to = i == ports.size() - 1 ? SlotHash.SLOT_COUNT : from + perNode;
+                connections.get(i).sync().clusterAddSlots(IntStream.range(from, to).toArray());
+            }
+            for (int i = 1; i < ports.size(); i++) {
+                connections.get(i).sync().clusterMeet("127.0.0.1", ports.getFirst());
+            }
+            var deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+            while (!connections.stream().allMatch(connection -> connection.sync().clusterInfo().contains("cluster_state:ok"))) {
+                if (System.nanoTime() > deadline)
+                    throw new IllegalStateException("local cluster did not become ready, logs in " + directory);
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            connections.forEach(StatefulRedisConnection::close);
+            log.info("local cluster ready - nodes={}", nodes());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private static StatefulRedisConnection<String, String> connectWhenUp(RedisClient client, int port) throws InterruptedException {
+        var deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (true) {
+            try {
+                return client.connect(RedisURI.create("127.0.0.1", port));
+            } catch (RuntimeException e) {
+                if (System.nanoTime() > deadline)
+                    throw e;
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * @return {@code host:port,host:port,..} for {@code spring.data.redis.cluster.nodes}
+     */
+    public String nodes() {
+        return ports.stream().map(port -> "127.0.0.1:" + port).collect(Collectors.joining(","));
+    }
+
+    @Override
+    public void close() {
+        processes.forEach(Process::destroy);
+        for (var process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS))
+                    process.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            log.warn("cleaning up {} failed: ", directory, e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.maymichael.perf;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.maymichael.data.BinaryData;
+import org.maymichael.services.DataService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * End-to-end timings of every save strategy x serializer and the read paths against a local cluster, compared to a
+ * stored baseline (median per scenario). Skipped if no server binary or no baseline is available.
+ * <p>
+ * {@code ./gradlew perfTest}, {@code -PupdatePerfBaseline} stores the current results as the new baseline,
+ * {@code -PperfTolerance=1.5} is the factor a scenario may get slower before the build fails.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class PerfTest {
+
+    private static final int NODES = 3;
+    private static final int ITEMS_PER_OPERATION = 20;
+    private static final int PAYLOAD_SIZE = 100_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+    // differences below this are noise on a local cluster, whatever the factor says
+    private static final double MIN_REGRESSION_MILLIS = 5.0;
+
+    private static LocalValkeyCluster cluster;
+
+    @Autowired
+    private DataService dataService;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        // timings are machine specific, record the baseline where the suite runs (reported as skipped until then),
+        // checked before starting anything so a missing baseline costs nothing
+        Assumptions.assumeTrue(Boolean.getBoolean("perf.updateBaseline") || Files.exists(baselineFile()),
+                "no perf baseline at " + baselineFile() + ", record one with -PupdatePerfBaseline");
+        var binary = LocalValkeyCluster.findServerBinary();
+        Assumptions.assumeTrue(binary.isPresent(), "no valkey-server/redis-server found, set -PvalkeyServer=<path>");
+        cluster = LocalValkeyCluster.start(binary.get(), NODES);
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        if (cluster != null)
+            cluster.close();
+    }
+
+    @DynamicPropertySource
+    static void clusterProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.redis.cluster.nodes", () -> cluster.nodes());
+        registry.add("spring.main.keep-alive", () -> "false");
+    }
+
+    @Test
+    void savesAndReadsWithinBaseline() throws IOException {
+        var payloads = new ArrayList<byte[]>(ITEMS_PER_OPERATION);
+        for (int i = 0; i < ITEMS_PER_OPERATION; i++) {
+            payloads.add(RandomStringUtils.insecure().nextAlphanumeric(PAYLOAD_SIZE).getBytes(StandardCharsets.UTF_8));
+        }
+
+        var results = new TreeMap<String, Double>();
+        for (var strategy : DataService.SaveStrategy.values()) {
+            for (var serializer : DataService.SerializerType.values()) {
+                var tids = new ArrayList<String>();
+                results.put("save." + strategy + "." + serializer, medianMillis(() -> {
+                    var tid = UUID.randomUUID().toString();
+                    tids.add(tid);
+                    dataService.saveData(tid, payloads, strategy, serializer);
+                }));
+                if (strategy == DataService.SaveStrategy.PIPELINED_ADAPTER) {
+                    // reads don't depend on how the values were written, measure them once per serializer
+                    var reads = tids.iterator();
+                    results.put("read." + serializer, medianMillis(() -> dataService.getDataForId(next(reads, tids))));
+                    var asyncReads = tids.iterator();
+                    results.put("readAsync." + serializer, medianMillis(() -> dataService.getDataForIdAsync(next(asyncReads, tids)).join()));
+                }
+            }
+        }
+
+        var valueId = dataService.saveData(UUID.randomUUID().toString(), payloads,
+                DataService.SaveStrategy.PIPELINED_ADAPTER, DataService.SerializerType.KRYO).getFirst().getId();
+        var binaryData = BinaryData.builder().data(payloads.getFirst()).build();
+        results.put("binaryData.save", medianMillis(() -> dataService.saveBinaryData(valueId, binaryData)));
+        results.put("binaryData.read", medianMillis(() -> dataService.getBinaryData(valueId)));
+
+        compareToBaseline(results);
+    }
+
+    private static String next(Iterator<String> tids, List<String> all) {
+        // one tid per written transaction, wraps around if there are more reads than writes
+        return tids.hasNext() ? tids.next() : all.getFirst();
+    }
+
+    private static double medianMillis(Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        var samples = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            operation.run();
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        return samples[ITERATIONS / 2];
+    }
+
+    private static Path baselineFile() {
+        return Path.of(System.getProperty("perf.baseline", "src/perfTest/resources/perf-baseline.json"));
+    }
+
+    private static void compareToBaseline(Map<String, Double> results) throws IOException {
+        var mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        var resultsFile = Path.of(System.getProperty("perf.results", "build/reports/perf/results.json"));
+        Files.createDirectories(resultsFile.toAbsolutePath().getParent());
+        mapper.writeValue(resultsFile.toFile(), results);
+
+        var baselineFile = baselineFile();
+        if (Boolean.getBoolean("perf.updateBaseline")) {
+            Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+            mapper.writeValue(baselineFile.toFile(), results);
+            log.info("perf baseline updated - file={}", baselineFile);
+            return;
+        }
+
+        var tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "1.5"));
+        Map<String, Double> baseline = mapper.readValue(baselineFile.toFile(), new TypeReference<>() {
+        });
+        var regressions = new ArrayList<String>();
+        results.forEach((scenario, millis) -> {
+            var expected = baseline.get(scenario);
+            if (expected == null) {
+                log.info("perf scenario without baseline - scenario={} median={}ms", scenario, millis);
+                return;
+            }
+            log.info("perf scenario - scenario={} median={}ms baseline={}ms", scenario, millis, expected);
+            if (millis > expected * tolerance && millis - expected > MIN_REGRESSION_MILLIS)
+                regressions.add(String.format("%s: %.1fms (baseline %.1fms)", scenario, millis, expected));
+        });
+        Assertions.assertTrue(regressions.isEmpty(), "slower than baseline x" + tolerance + ": " + regressions);
+    }
+}
@@ -0,0 +1,51 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.util.AimdLimit;
+
+public class AimdLimitTests {
+
+    private static final long TARGET = 1_000;
+
+    @Test
+    void testAdditiveIncrease() {
+        var limit = new AimdLimit(10, 1_000, 100, 5, TARGET);
+        limit.onSample(TARGET, true);
+        Assertions.assertEquals(105, limit.current());
+        limit.onSample(TARGET / 2, true);
+        Assertions.assertEquals(110, limit.current());
+        // underfull work says nothing about a larger limit
+        limit.onSample(TARGET / 2, false);
+        Assertions.assertEquals(110, limit.current());
+    }
+
+    @Test
+    void testMultiplicativeDecrease() {
+        var limit = new AimdLimit(10, 1_000, 101, 5, TARGET);
+        limit.onSample(TARGET + 1, true);
+        Assertions.assertEquals(50, limit.current());
+        // too slow counts even when underfull
+        limit.onSample(TARGET * 10, false);
+        Assertions.assertEquals(25, limit.current());
+    }
+
+    @Test
+    void testClampedToBounds() {
+        var limit = new AimdLimit(10, 100, 1_000, 30, TARGET);
+        Assertions.assertEquals(100, limit.current());
+        limit.onSample(0, true);
+        Assertions.assertEquals(100, limit.current());
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(TARGET + 1, true);
+        }
+        Assertions.assertEquals(10, limit.current());
+        limit.onSample(0, true);
+        Assertions.assertEquals(40, limit.current());
+
+        Assertions.assertEquals(10, new AimdLimit(10, 100, 1, 30, TARGET).current());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AimdLimit(0, 100, 10, 1, TARGET));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AimdLimit(10, 5, 10, 1, TARGET));
+    }
+}
@@ -0,0 +1,147 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.services.BlobStore;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BlobStoreTests {
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    @Test
+    void testDigest() {
+        Assertions.assertEquals(ABC_SHA256, BlobStore.digest("abc".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(EMPTY_SHA256, BlobStore.digest(new byte[0]));
+    }
+
+    @Test
+    void testReferencesCountDuplicatePayloads() {
+        var abc = "abc".getBytes(StandardCharsets.UTF_8);
+        // equal content, different array
+        var abcCopy = "abc".getBytes(StandardCharsets.UTF_8);
+        var empty = new byte[0];
+
+        var references = BlobStore.references(List.of(abc, empty, abcCopy, abc));
+
+        Assertions.assertEquals(List.of(ABC_SHA256, EMPTY_SHA256, ABC_SHA256, ABC_SHA256), references.digests());
+        Assertions.assertEquals(List.of(ABC_SHA256, EMPTY_SHA256), List.copyOf(references.counts().keySet()));
+        Assertions.assertEquals(Map.of(ABC_SHA256, 3L, EMPTY_SHA256, 1L), references.counts());
+        // one upload per distinct payload
+        Assertions.assertEquals(2, references.payloads().size());
+        Assertions.assertSame(abc, references.payloads().get(ABC_SHA256));
+    }
+
+    @Test
+    void testReleaseCountsMatchStoreCounts() {
+        var payloads = List.of("a".getBytes(StandardCharsets.UTF_8), "b".getBytes(StandardCharsets.UTF_8),
+                "a".getBytes(StandardCharsets.UTF_8));
+        var references = BlobStore.references(payloads);
+        // releasing the digests of every stored value drops exactly the references storing them added
+        Assertions.assertEquals(references.counts(), BlobStore.countReferences(references.digests()));
+        Assertions.assertTrue(BlobStore.countReferences(List.of()).isEmpty());
+    }
+
+    private record Setup(InMemoryRedisTemplate redis, BlobStore blobStore, PipelinedRedisKeyValueAdapter adapter) {
+
+        long refs(String digest) {
+            return redis.counter("blob:{" + digest + "}:refs");
+        }
+
+        boolean blobExists(String digest) {
+            return redis.exists("blob:{" + digest + "}");
+        }
+
+        TransactionValue value(String id, String digest) {
+            return TransactionValue.builder().id(id).tid("t1").binaryDataDigest(digest).build();
+        }
+    }
+
+    // blob store and adapter wired like in RedisConfig, on an in-memory server
+    private static Setup setup() {
+        var redis = new InMemoryRedisTemplate();
+        var blobStore = new BlobStore();
+        ReflectionTestUtils.setField(blobStore, "redisTemplate", redis);
+        var adapter = new PipelinedRedisKeyValueAdapter(redis, new RedisMappingContext(), null);
+        adapter.addReferenceField("value", "binaryDataDigest", blobStore::releaseAll);
+        return new Setup(redis, blobStore, adapter);
+    }
+
+    @Test
+    void testOverwriteReleasesTheReplacedReference() {
+        var setup = setup();
+        var a = "a".getBytes(StandardCharsets.UTF_8);
+        var b = "b".getBytes(StandardCharsets.UTF_8);
+        var digests = setup.blobStore().storeAll(List.of(a, a));
+        var digestA = digests.getFirst();
+        var values = new LinkedHashMap<Object, Object>();
+        values.put("1", setup.value("1", digestA));
+        values.put("2", setup.value("2", digestA));
+        setup.adapter().putAll(values);
+        Assertions.assertEquals(2, setup.refs(digestA));
+
+        // overwrite with a new payload: the new reference is taken by the writer, the old one is released
+        var digestB = setup.blobStore().storeAll(List.of(b)).getFirst();
+        setup.adapter().put("1", setup.value("1", digestB), "value");
+        Assertions.assertEquals(1, setup.refs(digestA));
+        Assertions.assertEquals(1, setup.refs(digestB));
+
+        // overwrite with the same payload keeps the count
+        setup.blobStore().storeAll(List.of(b));
+        setup.adapter().putAll(Map.of("1", setup.value("1", digestB)));
+        Assertions.assertEquals(1, setup.refs(digestB));
+
+        setup.adapter().put("2", setup.value("2", digestB), "value");
+        setup.blobStore().storeAll(List.of(b));
+        Assertions.assertEquals(0, setup.refs(digestA));
+        Assertions.assertFalse(setup.blobExists(digestA));
+        Assertions.assertTrue(setup.blobExists(digestB));
+        Assertions.assertEquals(2, setup.refs(digestB));
+    }
+
+    @Test
+    void testDeletingTwiceReleasesOnce() {
+        var setup = setup();
+        var a = "a".getBytes(StandardCharsets.UTF_8);
+        var digest = setup.blobStore().storeAll(List.of(a, a, a)).getFirst();
+        var values = new LinkedHashMap<Object, Object>();
+        for (var id : List.of("1", "2", "3")) {
+            values.put(id, setup.value(id, digest));
+        }
+        setup.adapter().putAll(values);
+        Assertions.assertEquals(3, setup.refs(digest));
+
+        // e.g. two callers deleting the same id, only the one that deleted the hash releases
+        setup.adapter().deleteAll(List.of("1"), "value");
+        setup.adapter().deleteAll(List.of("1", "1"), "value");
+        Assertions.assertEquals(2, setup.refs(digest));
+        Assertions.assertTrue(setup.redis().hash("value:1").isEmpty());
+
+        setup.adapter().delete("2", "value", TransactionValue.class);
+        setup.adapter().deleteAllOf("value");
+        Assertions.assertEquals(0, setup.refs(digest));
+        Assertions.assertFalse(setup.blobExists(digest));
+    }
+
+    @Test
+    void testExpiringReferencesAreRejected() {
+        var setup = setup();
+        var data = new RedisData();
+        data.setKeyspace("value");
+        data.setId("1");
+        data.setTimeToLive(60L);
+        data.getBucket().put("binaryDataDigest", "abc".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> setup.adapter().putAll(Map.of("1", data)));
+        Assertions.assertFalse(setup.redis().exists("value:1"));
+    }
+}
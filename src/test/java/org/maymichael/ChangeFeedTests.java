@@ -0,0 +1,34 @@
+package org.maymichael;
+
+import io.lettuce.core.StreamMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.services.ChangeFeed;
+
+import java.util.List;
+import java.util.Map;
+
+public class ChangeFeedTests {
+
+    @Test
+    void testDeletedPendingEntriesAreSkipped() {
+        var messages = List.of(
+                new StreamMessage<>("changes:{0}", "1-0", Map.of("tid", "t1", "ids", "a,b", "bytes", "10")),
+                // trimmed by MAXLEN while pending, XREADGROUP from 0 returns the id without a body
+                new StreamMessage<String, String>("changes:{0}", "2-0", null),
+                new StreamMessage<String, String>("changes:{0}", "3-0", Map.of()),
+                new StreamMessage<>("changes:{0}", "4-0", Map.of("tid", "t2", "ids", "", "bytes", "0")));
+
+        var events = ChangeFeed.toEvents(messages);
+
+        Assertions.assertEquals(List.of(
+                new ChangeFeed.Event("changes:{0}", "1-0", "t1", List.of("a", "b"), 10),
+                new ChangeFeed.Event("changes:{0}", "4-0", "t2", List.of(), 0)), events);
+    }
+
+    @Test
+    void testOnlyDeletedEntries() {
+        var messages = List.of(new StreamMessage<String, String>("changes:{1}", "5-0", null));
+        Assertions.assertTrue(ChangeFeed.toEvents(messages).isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.util.FairShareScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+public class FairShareSchedulerTests {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void testReleaseGrantsWaiters() throws Exception {
+        var scheduler = new FairShareScheduler(10);
+        var a = scheduler.share("a", 1);
+        var b = scheduler.share("b", 1);
+
+        // capped at the capacity, at least 1
+        Assertions.assertEquals(10, a.acquire(50));
+        a.release(10);
+        Assertions.assertEquals(1, a.acquire(0));
+        a.release(1);
+        Assertions.assertEquals(0, scheduler.inUse());
+
+        Assertions.assertEquals(4, a.acquire(4));
+        Assertions.assertEquals(6, a.acquire(6));
+        Assertions.assertEquals(10, scheduler.inUse());
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var waiting = CompletableFuture.supplyAsync(() -> b.acquire(5), executor);
+            await(() -> scheduler.waiting() == 1);
+
+            a.release(4);
+            // 6 + 5 doesn't fit yet
+            Thread.sleep(50);
+            Assertions.assertFalse(waiting.isDone());
+
+            a.release(6);
+            Assertions.assertEquals(5, waiting.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(5, scheduler.inUse());
+            Assertions.assertEquals(0, scheduler.waiting());
+            b.release(5);
+        }
+        Assertions.assertEquals(0, scheduler.inUse());
+    }
+
+    @Test
+    void testWeightedShareUnderContention() throws Exception {
+        // every acquire takes the whole capacity, so grants happen one at a time in tag order
+        var scheduler = new FairShareScheduler(300);
+        var blocker = scheduler.share("blocker", 1);
+        var heavy = scheduler.share("heavy", 3);
+        var light = scheduler.share("light", 1);
+        var granted = Collections.synchronizedList(new ArrayList<String>());
+
+        var taken = blocker.acquire(300);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                for (var share : List.of(heavy, light)) {
+                    executor.execute(() -> {
+                        var cost = share.acquire(300);
+                        granted.add(share.name());
+                        share.release(cost);
+                    });
+                }
+            }
+            await(() -> scheduler.waiting() == 16);
+            blocker.release(taken);
+        }
+
+        Assertions.assertEquals(16, granted.size());
+        // finish tags: heavy every 100, light every 300, so 6:2 in the first 8 grants
+        var first = granted.subList(0, 8);
+        Assertions.assertEquals(6, Collections.frequency(first, "heavy"));
+        Assertions.assertEquals(2, Collections.frequency(first, "light"));
+        Assertions.assertEquals(0, scheduler.inUse());
+    }
+
+    @Test
+    void testLargeHeadIsNotStarved() throws Exception {
+        var scheduler = new FairShareScheduler(10);
+        var small = scheduler.share("small", 1);
+        var large = scheduler.share("large", 1);
+
+        var held = small.acquire(6);
+        var stop = new AtomicBoolean();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var waiting = CompletableFuture.supplyAsync(() -> large.acquire(10), executor);
+            await(() -> scheduler.waiting() == 1);
+
+            // a steady stream of small acquires that would always fit next to each other
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    while (!stop.get()) {
+                        small.release(small.acquire(1));
+                    }
+                });
+            }
+            small.release(held);
+
+            Assertions.assertEquals(10, waiting.get(10, TimeUnit.SECONDS));
+            stop.set(true);
+            large.release(10);
+        }
+        Assertions.assertEquals(0, scheduler.inUse());
+    }
+}
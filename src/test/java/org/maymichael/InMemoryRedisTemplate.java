@@ -0,0 +1,236 @@
+package org.maymichael;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Just enough of a server in memory for the blob reference accounting: hashes, sets and strings, plus the scripts
+ * of BlobStore and PipelinedRedisKeyValueAdapter (told apart by the commands they call). Pipelines run every
+ * command right away and hand out the replies on close.
+ */
+public class InMemoryRedisTemplate extends RedisTemplate<String, byte[]> {
+
+    private static final Object UNKNOWN = new Object();
+
+    // keys and members as latin1 strings, values: LinkedHashMap<String, byte[]> hash, Set<String>, byte[]
+    private final Map<String, Object> data = new HashMap<>();
+    private List<Object> pipeline;
+
+    public InMemoryRedisTemplate() {
+        // never connected, spring data's adapter wants one for its listener container
+        setConnectionFactory(new LettuceConnectionFactory());
+    }
+
+    @Override
+    public synchronized <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        return action.doInRedis(proxy(RedisConnection.class));
+    }
+
+    public synchronized boolean exists(String key) {
+        return data.containsKey(key);
+    }
+
+    public synchronized long counter(String key) {
+        return data.get(key) instanceof byte[] value ? Long.parseLong(string(value)) : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized Map<String, byte[]> hash(String key) {
+        return (Map<String, byte[]>) data.getOrDefault(key, Map.of());
+    }
+
+    private <T> T proxy(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private final InvocationHandler handler = new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "hashCommands", "setCommands", "keyCommands", "scriptingCommands", "stringCommands" -> {
+                    return proxy(method.getReturnType());
+                }
+                case "openPipeline" -> {
+                    pipeline = new ArrayList<>();
+                    return null;
+                }
+                case "closePipeline" -> {
+                    var replies = pipeline;
+                    pipeline = null;
+                    return replies;
+                }
+                case "isPipelined" -> {
+                    return pipeline != null;
+                }
+                case "isQueueing", "isClosed" -> {
+                    return false;
+                }
+                case "close" -> {
+                    return null;
+                }
+                case "toString" -> {
+                    return "in-memory connection";
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                default -> {
+                }
+            }
+            var reply = command(method.getName(), args == null ? new Object[0] : args);
+            if (reply == UNKNOWN) {
+                if (method.isDefault())
+                    return InvocationHandler.invokeDefault(proxy, method, args);
+                throw new UnsupportedOperationException(method.getName());
+            }
+            if (pipeline != null) {
+                pipeline.add(reply);
+                return null;
+            }
+            return reply;
+        }
+    };
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hashOrNull(byte[] key) {
+        return (Map<String, byte[]>) data.get(string(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(byte[] key, boolean create) {
+        return create ? (Set<String>) data.computeIfAbsent(string(key), k -> new LinkedHashSet<String>())
+                : (Set<String>) data.getOrDefault(string(key), Set.of());
+    }
+
+    private Object command(String name, Object[] args) {
+        return switch (name) {
+            case "hGet" -> {
+                var hash = hashOrNull((byte[]) args[0]);
+                yield hash == null ? null : hash.get(string((byte[]) args[1]));
+            }
+            case "hMGet" -> {
+                var hash = hashOrNull((byte[]) args[0]);
+                var values = new ArrayList<byte[]>();
+                for (var field : (byte[][]) args[1]) {
+                    values.add(hash == null ? null : hash.get(string(field)));
+                }
+                yield values;
+            }
+            case "hGetAll" -> {
+                var hash = hashOrNull((byte[]) args[0]);
+                var copy = new LinkedHashMap<byte[], byte[]>();
+                if (hash != null)
+                    hash.forEach((field, value) -> copy.put(bytes(field), value));
+                yield copy;
+            }
+            case "hMSet" -> {
+                @SuppressWarnings("unchecked")
+                var hash = (Map<String, byte[]>) data.computeIfAbsent(string((byte[]) args[0]), k -> new LinkedHashMap<String, byte[]>());
+                ((Map<byte[], byte[]>) args[1]).forEach((field, value) -> hash.put(string(field), value));
+                yield null;
+            }
+            case "del" -> {
+                var deleted = 0L;
+                for (var key : (byte[][]) args[0]) {
+                    if (data.remove(string(key)) != null)
+                        deleted++;
+                }
+                yield deleted;
+            }
+            case "expire" -> data.containsKey(string((byte[]) args[0]));
+            case "sAdd" -> {
+                var set = set((byte[]) args[0], true);
+                var added = 0L;
+                for (var member : (byte[][]) args[1]) {
+                    if (set.add(string(member)))
+                        added++;
+                }
+                yield added;
+            }
+            case "sRem" -> {
+                var set = set((byte[]) args[0], false);
+                var removed = 0L;
+                for (var member : (byte[][]) args[1]) {
+                    if (set.remove(string(member)))
+                        removed++;
+                }
+                if (set.isEmpty())
+                    data.remove(string((byte[]) args[0]));
+                yield removed;
+            }
+            case "sMembers" -> {
+                var members = new LinkedHashSet<byte[]>();
+                set((byte[]) args[0], false).forEach(member -> members.add(bytes(member)));
+                yield members;
+            }
+            case "get" -> data.get(string((byte[]) args[0])) instanceof byte[] value ? value : null;
+            case "eval" -> eval(string((byte[]) args[0]), (byte[][]) args[3]);
+            default -> UNKNOWN;
+        };
+    }
+
+    private Object eval(String script, byte[][] keysAndArgs) {
+        var key = string(keysAndArgs[0]);
+        if (script.contains("DECRBY")) {
+            // BlobStore RELEASE: KEYS blob, refs, ARGV count
+            var refs = string(keysAndArgs[1]);
+            var count = counter(refs) - Long.parseLong(string(keysAndArgs[2]));
+            data.put(refs, bytes(Long.toString(count)));
+            if (count <= 0) {
+                data.remove(key);
+                data.remove(refs);
+            }
+            return count;
+        }
+        if (script.contains("INCRBY")) {
+            // BlobStore REFERENCE: KEYS blob, refs, ARGV count, payload (optional)
+            if (!data.containsKey(key)) {
+                if (keysAndArgs.length < 5)
+                    return 0L;
+                data.put(key, keysAndArgs[4]);
+            }
+            var refs = string(keysAndArgs[1]);
+            data.put(refs, bytes(Long.toString(counter(refs) + Long.parseLong(string(keysAndArgs[2])))));
+            return 1L;
+        }
+        if (script.contains("HSET")) {
+            // adapter REPLACE_REFERENCING: KEYS entity, ARGV field, hash
+            var old = hashOrNull(keysAndArgs[0]);
+            var reference = old == null ? null : old.get(string(keysAndArgs[1]));
+            var hash = new LinkedHashMap<String, byte[]>();
+            for (int i = 2; i < keysAndArgs.length; i += 2) {
+                hash.put(string(keysAndArgs[i]), keysAndArgs[i + 1]);
+            }
+            data.put(key, hash);
+            return reference;
+        }
+        if (script.contains("HGET")) {
+            // adapter DELETE_REFERENCING: KEYS entity, ARGV field
+            var old = hashOrNull(keysAndArgs[0]);
+            if (old == null)
+                return null;
+            data.remove(key);
+            return old.get(string(keysAndArgs[1]));
+        }
+        throw new UnsupportedOperationException(script);
+    }
+}
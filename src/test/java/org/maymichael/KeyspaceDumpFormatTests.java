@@ -0,0 +1,89 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.maymichael.util.KeyspaceDumpFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class KeyspaceDumpFormatTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        var fields = new LinkedHashMap<byte[], byte[]>();
+        fields.put(bytes("_class"), bytes("org.maymichael.data.TransactionValue"));
+        fields.put(bytes("tid"), bytes("t1"));
+        fields.put(bytes("empty"), new byte[0]);
+        var written = List.<KeyspaceDumpFormat.Entry>of(
+                new KeyspaceDumpFormat.Dump(bytes("value:1"), 1500, new byte[]{0, 1, 2, (byte) 0xff}),
+                new KeyspaceDumpFormat.Hash(bytes("value:2"), KeyspaceDumpFormat.NO_EXPIRY, fields),
+                new KeyspaceDumpFormat.Members(bytes("value:tid:t1"), KeyspaceDumpFormat.NO_EXPIRY,
+                        List.of(bytes("1"), bytes("2"))),
+                new KeyspaceDumpFormat.Members(bytes("value:empty"), 42, List.of()));
+
+        var file = directory.resolve("node" + KeyspaceDumpFormat.FILE_SUFFIX);
+        var bytesWritten = 0L;
+        try (var writer = new KeyspaceDumpFormat.Writer(file)) {
+            for (var entry : written) {
+                bytesWritten += writer.write(entry);
+            }
+        }
+        // magic + version header
+        Assertions.assertEquals(bytesWritten + 4, Files.size(file));
+
+        var read = new ArrayList<KeyspaceDumpFormat.Entry>();
+        try (var reader = new KeyspaceDumpFormat.Reader(file)) {
+            KeyspaceDumpFormat.Entry entry;
+            while ((entry = reader.next()) != null) {
+                read.add(entry);
+            }
+        }
+        Assertions.assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            Assertions.assertEquals(describe(written.get(i)), describe(read.get(i)));
+        }
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        var file = directory.resolve("other" + KeyspaceDumpFormat.FILE_SUFFIX);
+        Files.write(file, bytes("not a dump"));
+        Assertions.assertThrows(IOException.class, () -> new KeyspaceDumpFormat.Reader(file).close());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    // byte[] has identity equals, compare a readable form (keeps field order)
+    private static String describe(KeyspaceDumpFormat.Entry entry) {
+        var header = entry.getClass().getSimpleName() + " " + string(entry.key()) + " " + entry.pttl();
+        return switch (entry) {
+            case KeyspaceDumpFormat.Dump dump -> header + " " + string(dump.payload());
+            case KeyspaceDumpFormat.Hash hash -> {
+                var fields = new ArrayList<String>();
+                for (Map.Entry<byte[], byte[]> field : hash.fields().entrySet()) {
+                    fields.add(string(field.getKey()) + "=" + string(field.getValue()));
+                }
+                yield header + " " + fields;
+            }
+            case KeyspaceDumpFormat.Members members ->
+                    header + " " + members.members().stream().map(KeyspaceDumpFormatTests::string).toList();
+        };
+    }
+}
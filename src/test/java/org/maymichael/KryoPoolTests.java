@@ -0,0 +1,162 @@
+package org.maymichael;
+
+import com.esotericsoftware.kryo.Kryo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.util.KryoPool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KryoPoolTests {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private KryoPool pool(int minIdle, int maxIdle) {
+        return new KryoPool(() -> {
+            created.incrementAndGet();
+            return new Kryo();
+        }, minIdle, maxIdle);
+    }
+
+    private static List<Kryo> obtain(KryoPool pool, int count) {
+        var instances = new ArrayList<Kryo>(count);
+        for (int i = 0; i < count; i++) {
+            instances.add(pool.obtain());
+        }
+        return instances;
+    }
+
+    @Test
+    void testObtainGrowsTarget() {
+        var pool = pool(0, 4);
+        var instances = obtain(pool, 3);
+        Assertions.assertEquals(3, pool.stats().targetIdle());
+        Assertions.assertEquals(3, pool.stats().misses());
+        Assertions.assertEquals(3, created.get());
+
+        // the default window doesn't roll, everything created during the burst is kept
+        instances.forEach(pool::free);
+        Assertions.assertEquals(3, pool.stats().idle());
+        Assertions.assertEquals(0, pool.stats().discarded());
+
+        obtain(pool, 3);
+        Assertions.assertEquals(3, pool.stats().hits());
+        Assertions.assertEquals(3, created.get());
+    }
+
+    @Test
+    void testObtainGrowsUpToMaxIdle() {
+        var pool = pool(0, 2);
+        obtain(pool, 3).forEach(pool::free);
+        Assertions.assertEquals(2, pool.stats().targetIdle());
+        Assertions.assertEquals(2, pool.stats().idle());
+        Assertions.assertEquals(1, pool.stats().discarded());
+    }
+
+    @Test
+    void testWindowOnlyRollsOnFree() {
+        var pool = pool(0, 8);
+        // every free rolls the window
+        pool.setWindow(Duration.ZERO);
+        var instances = obtain(pool, 4);
+        Assertions.assertEquals(4, pool.stats().peakInUse());
+        Assertions.assertEquals(4, pool.stats().targetIdle());
+
+        pool.free(instances.removeLast());
+        // sized for the peak of the window that ended, the next one starts at the current concurrency
+        Assertions.assertEquals(4, pool.stats().targetIdle());
+        Assertions.assertEquals(3, pool.stats().peakInUse());
+        Assertions.assertEquals(1, pool.stats().idle());
+
+        pool.free(instances.removeLast());
+        Assertions.assertEquals(3, pool.stats().targetIdle());
+        Assertions.assertEquals(2, pool.stats().peakInUse());
+        Assertions.assertEquals(2, pool.stats().idle());
+        Assertions.assertEquals(0, pool.stats().discarded());
+    }
+
+    @Test
+    void testRollDiscardsSurplusIdle() {
+        var pool = pool(0, 8);
+        obtain(pool, 4).forEach(pool::free);
+        Assertions.assertEquals(4, pool.stats().idle());
+
+        pool.setWindow(Duration.ZERO);
+        // first roll: the window still saw 4 in use
+        pool.free(pool.obtain());
+        Assertions.assertEquals(4, pool.stats().targetIdle());
+        Assertions.assertEquals(4, pool.stats().idle());
+
+        // second roll: peak 1, the surplus idle instances and the freed one above the target are dropped
+        pool.free(pool.obtain());
+        Assertions.assertEquals(1, pool.stats().targetIdle());
+        Assertions.assertEquals(1, pool.stats().idle());
+        Assertions.assertEquals(3, pool.stats().discarded());
+        Assertions.assertEquals(4, created.get());
+    }
+
+    @Test
+    void testRollKeepsMinIdle() {
+        var pool = pool(2, 8);
+        obtain(pool, 4).forEach(pool::free);
+        pool.setWindow(Duration.ZERO);
+        pool.free(pool.obtain());
+        pool.free(pool.obtain());
+        Assertions.assertEquals(2, pool.stats().targetIdle());
+        Assertions.assertEquals(2, pool.stats().idle());
+    }
+
+    @Test
+    void testPrewarm() {
+        var pool = pool(0, 4);
+        pool.prewarm(3);
+        Assertions.assertEquals(3, created.get());
+        Assertions.assertEquals(3, pool.stats().idle());
+        Assertions.assertEquals(3, pool.stats().targetIdle());
+
+        obtain(pool, 3);
+        Assertions.assertEquals(3, pool.stats().hits());
+        Assertions.assertEquals(0, pool.stats().misses());
+        Assertions.assertEquals(3, created.get());
+    }
+
+    @Test
+    void testPrewarmBoundedByMaxIdle() {
+        var pool = pool(0, 4);
+        pool.prewarm(10);
+        Assertions.assertEquals(4, created.get());
+        Assertions.assertEquals(4, pool.stats().idle());
+        // never lowers the target
+        pool.prewarm(1);
+        Assertions.assertEquals(4, pool.stats().targetIdle());
+        Assertions.assertEquals(4, created.get());
+    }
+
+    @Test
+    void testResize() {
+        var pool = pool(0, 8);
+        obtain(pool, 5).forEach(pool::free);
+        Assertions.assertEquals(5, pool.stats().targetIdle());
+
+        pool.resize(0, 2);
+        Assertions.assertEquals(2, pool.stats().targetIdle());
+        // idle instances stay until they are used, returning one above the new bound discards it
+        pool.free(pool.obtain());
+        Assertions.assertEquals(4, pool.stats().idle());
+        Assertions.assertEquals(1, pool.stats().discarded());
+
+        pool.resize(6, 8);
+        Assertions.assertEquals(6, pool.stats().targetIdle());
+    }
+
+    @Test
+    void testInvalidBounds() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool(-1, 4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool(4, 3));
+        var pool = pool(0, 4);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool.resize(2, 1));
+    }
+}
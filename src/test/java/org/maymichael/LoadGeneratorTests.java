@@ -0,0 +1,36 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.services.LoadGenerator;
+
+import java.util.List;
+
+public class LoadGeneratorTests {
+
+    private static LoadGenerator.Profile profile(List<Integer> concurrency, Double ratePerSecond, Integer warmupSeconds,
+                                                 Integer durationSeconds) {
+        return new LoadGenerator.Profile(null, null, null, null, concurrency, null, ratePerSecond, warmupSeconds,
+                durationSeconds);
+    }
+
+    @Test
+    void testDefaults() {
+        var profile = profile(null, null, null, null);
+        Assertions.assertEquals(List.of(16), profile.concurrency());
+        Assertions.assertEquals(20.0, profile.ratePerSecond());
+    }
+
+    @Test
+    void testRejectsInvalidProfiles() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, 0.0, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, -1.0, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, Double.NaN, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, 2e9, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(List.of(0), null, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, null, -1, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> profile(null, null, null, 0));
+        // boundaries are fine
+        Assertions.assertDoesNotThrow(() -> profile(List.of(1), LoadGenerator.MAX_RATE_PER_SECOND, 0, 1));
+    }
+}
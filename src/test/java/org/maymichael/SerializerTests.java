@@ -9,12 +9,36 @@
 import org.junit.jupiter.api.Test;
 import org.maymichael.config.RedisConfig;
 import org.maymichael.data.BinaryData;
+import org.maymichael.data.BinaryDataBase64;
+import org.maymichael.data.BinaryDataRaw;
+import org.maymichael.data.TransactionValue;
+import org.maymichael.util.BinaryDataBase64Format;
+import org.maymichael.util.BinaryDataBase64ToBytesConverter;
+import org.maymichael.util.BinaryDataFormat;
+import org.maymichael.util.BinaryDataToBytesConverter;
+import org.maymichael.util.BytesToBinaryDataBase64Converter;
+import org.maymichael.util.BytesToBinaryDataConverter;
+import org.maymichael.util.KryoRedisSerializer;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.PipelinedRedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.util.StopWatch;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Slf4j
 public class SerializerTests {
@@ -48,4 +72,178 @@ void testBinaryDataSerialize() {
         Assertions.assertNotNull(deserialized.getData());
         Assertions.assertArrayEquals(bigData.getData(), deserialized.getData());
     }
+
+    @Test
+    void testKryoDirectBufferRoundTrip() {
+        var serializer = new KryoRedisSerializer<BinaryData>();
+        var data = BinaryData.builder().data(RandomStringUtils.insecure().nextAlphanumeric(300_000).getBytes(StandardCharsets.UTF_8)).build();
+
+        var buffer = ByteBuffer.allocateDirect(400_000);
+        var written = serializer.serialize(data, buffer);
+        Assertions.assertEquals(written, buffer.position());
+        // same wire format as the byte[] path
+        Assertions.assertArrayEquals(serializer.serialize(data), toArray(buffer.duplicate().flip()));
+
+        var deserialized = serializer.deserialize(buffer.flip());
+        Assertions.assertNotNull(deserialized);
+        Assertions.assertEquals(data.getId(), deserialized.getId());
+        Assertions.assertArrayEquals(data.getData(), deserialized.getData());
+        Assertions.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testVersionedFormatRoundTrip() {
+        var data = BinaryData.builder().data(RandomStringUtils.insecure().nextAlphanumeric(300_000).getBytes(StandardCharsets.UTF_8)).build();
+
+        var encoded = BinaryDataFormat.encode(data);
+        Assertions.assertEquals(BinaryDataFormat.encodedSize(data), encoded.length);
+        Assertions.assertTrue(BinaryDataFormat.isVersioned(encoded));
+
+        var decoded = BinaryDataFormat.decode(encoded);
+        Assertions.assertEquals(data.getId(), decoded.getId());
+        Assertions.assertArrayEquals(data.getData(), decoded.getData());
+    }
+
+    @Test
+    void testVersionedFormatSkipsUnknownFields() {
+        var data = BinaryData.builder().data(new byte[]{1, 2, 3}).build();
+        var encoded = BinaryDataFormat.encode(data);
+
+        // simulate a newer writer: append a varint field 7 and a length delimited field 8
+        var extended = ByteBuffer.allocate(encoded.length + 16);
+        extended.put(encoded);
+        extended.put((byte) (7 << 3)).put((byte) 42);
+        extended.put((byte) (8 << 3 | 2)).put((byte) 3).put(new byte[]{9, 9, 9});
+
+        var decoded = BinaryDataFormat.decode(extended.flip());
+        Assertions.assertEquals(data.getId(), decoded.getId());
+        Assertions.assertArrayEquals(data.getData(), decoded.getData());
+    }
+
+    @Test
+    void testVersionedFormatRejectsTruncatedInput() {
+        var encoded = BinaryDataFormat.encode(BinaryData.builder().data(new byte[300]).build());
+        // cut anywhere: either a complete prefix of the fields, or a SerializationException
+        for (int length = 0; length < encoded.length; length++) {
+            var truncated = Arrays.copyOf(encoded, length);
+            try {
+                BinaryDataFormat.decode(truncated);
+            } catch (SerializationException e) {
+                // expected for most cuts
+            }
+        }
+        // header, then a tag whose varint continues past the end
+        var cutVarInt = new byte[]{encoded[0], encoded[1], BinaryDataFormat.VERSION, (byte) 0x80};
+        var e = Assertions.assertThrows(SerializationException.class, () -> BinaryDataFormat.decode(cutVarInt));
+        Assertions.assertTrue(e.getMessage().startsWith("truncated"));
+    }
+
+    @Test
+    void testReadingConverterAcceptsBothFormats() {
+        var data = BinaryData.builder().data(new byte[]{4, 5, 6}).build();
+        var converter = new BytesToBinaryDataConverter();
+
+        var fromKryo = converter.convert(new KryoRedisSerializer<BinaryData>().serialize(data));
+        var fromVersioned = converter.convert(BinaryDataFormat.encode(data));
+
+        Assertions.assertNotNull(fromKryo);
+        Assertions.assertNotNull(fromVersioned);
+        Assertions.assertArrayEquals(data.getData(), fromKryo.getData());
+        Assertions.assertArrayEquals(data.getData(), fromVersioned.getData());
+        Assertions.assertEquals(data.getId(), fromVersioned.getId());
+    }
+
+    @Test
+    void testBase64FormatMatchesJackson() {
+        var jackson = new Jackson2JsonRedisSerializer<>(objectMapper(), BinaryDataBase64.class);
+        // all three base64 padding variants
+        for (var length : new int[]{0, 1, 2, 3, 300_000}) {
+            var data = BinaryDataBase64.builder().data(RandomStringUtils.insecure().nextAlphanumeric(length).getBytes(StandardCharsets.UTF_8)).build();
+
+            var encoded = BinaryDataBase64Format.encode(data);
+            Assertions.assertArrayEquals(jackson.serialize(data), encoded);
+
+            var decoded = BinaryDataBase64Format.decode(jackson.serialize(data));
+            Assertions.assertNotNull(decoded);
+            Assertions.assertEquals(data.getId(), decoded.getId());
+            Assertions.assertArrayEquals(length == 0 ? null : data.getData(), decoded.getData());
+        }
+    }
+
+    @Test
+    void testBase64ConvertersFallBackToJackson() {
+        var writer = new BinaryDataBase64ToBytesConverter(objectMapper());
+        var reader = new BytesToBinaryDataBase64Converter(objectMapper());
+        // escaped id, not handled by the fast path
+        var data = BinaryDataBase64.builder().id("a\"quoted\"\\id").data(new byte[]{1, 2, 3}).build();
+        Assertions.assertNull(BinaryDataBase64Format.encode(data));
+
+        var encoded = writer.convert(data);
+        Assertions.assertNull(BinaryDataBase64Format.decode(encoded));
+        var decoded = reader.convert(encoded);
+        Assertions.assertNotNull(decoded);
+        Assertions.assertEquals(data.getId(), decoded.getId());
+        Assertions.assertArrayEquals(data.getData(), decoded.getData());
+    }
+
+    @Test
+    void testPrecompiledWriterMatchesConverter() {
+        var adapter = adapter();
+        var payload = RandomStringUtils.insecure().nextAlphanumeric(1_000).getBytes(StandardCharsets.UTF_8);
+        var values = List.of(
+                TransactionValue.builder().tid("t1").something("even").binaryData(BinaryData.builder().data(payload).build()).build(),
+                TransactionValue.builder().tid("t1").something("odd").binaryDataRaw(BinaryDataRaw.builder().data(payload).build()).build(),
+                TransactionValue.builder().tid("t1").binaryDataBase64(BinaryDataBase64.builder().data(payload).build()).build(),
+                TransactionValue.builder().tid("t1").binaryDataDigest("abc").build());
+        for (var value : values) {
+            var encoded = adapter.encode(value.getId(), value);
+            var converted = adapter.toRedisData(value.getId(), value);
+            Assertions.assertTrue(adapter.isPrecompiled(TransactionValue.class));
+            Assertions.assertEquals(converted.getId(), encoded.getId());
+            Assertions.assertEquals(toStrings(converted.getBucket().rawMap()), toStrings(encoded.getHash()));
+            Assertions.assertEquals(converted.getKeyspace(), encoded.getKeyspace());
+            Assertions.assertEquals(converted.getTimeToLive(), encoded.getTimeToLive());
+            Assertions.assertEquals(indexKeys(adapter, converted), encoded.getIndexKeys().stream().map(SerializerTests::latin1).sorted().toList());
+        }
+    }
+
+    private PipelinedRedisKeyValueAdapter adapter() {
+        var template = new RedisTemplate<String, byte[]>();
+        // never connected, only used for conversion
+        template.setConnectionFactory(new LettuceConnectionFactory());
+        var conversions = new RedisCustomConversions(List.of(
+                new BinaryDataToBytesConverter(), new BytesToBinaryDataConverter(),
+                new BinaryDataBase64ToBytesConverter(objectMapper()), new BytesToBinaryDataBase64Converter(objectMapper())));
+        return new PipelinedRedisKeyValueAdapter(template, new RedisMappingContext(), conversions);
+    }
+
+    // keys IndexWriter would add the entity to
+    private static List<String> indexKeys(PipelinedRedisKeyValueAdapter adapter, RedisData converted) {
+        var keys = new ArrayList<String>();
+        for (var data : converted.getIndexedData()) {
+            if (data instanceof SimpleIndexedPropertyValue simple && simple.getValue() != null) {
+                var value = adapter.getPipelineConverter().getConversionService().convert(simple.getValue(), byte[].class);
+                keys.add(simple.getKeyspace() + ":" + simple.getIndexName() + ":" + latin1(value));
+            }
+        }
+        keys.sort(null);
+        return keys;
+    }
+
+    private static String latin1(byte[] value) {
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    private static Map<String, String> toStrings(Map<byte[], byte[]> hash) {
+        var strings = new TreeMap<String, String>();
+        hash.forEach((field, value) -> strings.put(new String(field, StandardCharsets.ISO_8859_1),
+                new String(value, StandardCharsets.ISO_8859_1)));
+        return strings;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 }
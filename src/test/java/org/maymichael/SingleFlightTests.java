@@ -0,0 +1,137 @@
+package org.maymichael;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.util.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTests {
+
+    @Test
+    void testWaitersShareOneLoad() throws Exception {
+        var singleFlight = new SingleFlight<String, List<String>>();
+        var loads = new AtomicInteger();
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var result = List.of("a", "b");
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = CompletableFuture.supplyAsync(() -> singleFlight.run("tid", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return result;
+            }), executor);
+            Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            var waiters = new ArrayList<CompletableFuture<List<String>>>();
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < 10; i++) {
+                var waiter = new CompletableFuture<List<String>>();
+                waiters.add(waiter);
+                threads.add(Thread.ofPlatform().start(() -> waiter.complete(singleFlight.run("tid", () -> {
+                    loads.incrementAndGet();
+                    return List.of();
+                }))));
+            }
+            // all of them wait for the running load
+            for (var thread : threads) {
+                while (thread.getState() != Thread.State.WAITING) {
+                    Thread.onSpinWait();
+                }
+            }
+            // a different key loads on its own
+            Assertions.assertEquals(List.of("c"), singleFlight.run("other", () -> List.of("c")));
+            Assertions.assertEquals(1, singleFlight.inFlight());
+
+            release.countDown();
+            Assertions.assertSame(result, first.get(10, TimeUnit.SECONDS));
+            for (var waiter : waiters) {
+                Assertions.assertSame(result, waiter.get(10, TimeUnit.SECONDS));
+            }
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+
+        // the key is forgotten once loaded
+        Assertions.assertEquals(List.of("new"), singleFlight.run("tid", () -> List.of("new")));
+    }
+
+    @Test
+    void testExceptionPropagatesAndClearsKey() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        var failure = new IllegalStateException("load failed");
+        var waiter = new CompletableFuture<String>();
+        var waiterThread = new Thread(() -> {
+            try {
+                waiter.complete(singleFlight.run("tid", () -> "unused"));
+            } catch (RuntimeException e) {
+                waiter.completeExceptionally(e);
+            }
+        });
+
+        var error = Assertions.assertThrows(IllegalStateException.class, () -> singleFlight.run("tid", () -> {
+            // fail only once the second caller waits for this load
+            waiterThread.start();
+            while (waiterThread.getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+            throw failure;
+        }));
+        Assertions.assertSame(failure, error);
+        var waiterError = Assertions.assertThrows(ExecutionException.class, () -> waiter.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(failure, waiterError.getCause());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+        Assertions.assertEquals("again", singleFlight.run("tid", () -> "again"));
+
+        // async loads that fail, or throw right away, clear the key as well
+        var async = singleFlight.execute("tid", key -> CompletableFuture.failedFuture(failure));
+        Assertions.assertSame(failure, Assertions.assertThrows(ExecutionException.class, async::get).getCause());
+        var thrown = singleFlight.execute("tid", key -> {
+            throw failure;
+        });
+        Assertions.assertSame(failure, Assertions.assertThrows(ExecutionException.class, thrown::get).getCause());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testCancellingOneCallerKeepsTheLoad() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        var load = new CompletableFuture<String>();
+        var loads = new AtomicInteger();
+
+        var first = singleFlight.execute("tid", key -> {
+            loads.incrementAndGet();
+            return load;
+        });
+        var second = singleFlight.execute("tid", key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("unused");
+        });
+        Assertions.assertEquals(1, loads.get());
+
+        Assertions.assertTrue(first.cancel(true));
+        Assertions.assertFalse(load.isDone());
+        Assertions.assertEquals(1, singleFlight.inFlight());
+
+        // joins the running load even though the first caller is gone
+        var third = singleFlight.execute("tid", key -> CompletableFuture.completedFuture("unused"));
+        load.complete("value");
+        Assertions.assertEquals("value", second.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals("value", third.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(first.isCancelled());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+}
@@ -0,0 +1,113 @@
+package org.maymichael.services;
+
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.config.PlaygroundProperties;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ChangeFeedReaderTests {
+
+    private static final String KEY = "changes:{0}";
+
+    /**
+     * One stream with one consumer: XREADGROUP from 0 returns the pending entries, from > delivers the new ones
+     * (and makes them pending), XACK removes them from the pending list. Stops the reader once nothing is left.
+     */
+    private static final class Stream {
+        final List<StreamMessage<String, String>> entries = new ArrayList<>();
+        final List<StreamMessage<String, String>> pending = new ArrayList<>();
+        final List<List<String>> acks = new ArrayList<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        int reads;
+
+        @SuppressWarnings("unchecked")
+        RedisClusterCommands<String, String> commands() {
+            return (RedisClusterCommands<String, String>) Proxy.newProxyInstance(RedisClusterCommands.class.getClassLoader(),
+                    new Class<?>[]{RedisClusterCommands.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "xgroupCreate" -> "OK";
+                        case "xreadgroup" -> read(((XReadArgs.StreamOffset<String>[]) args[2])[0].getOffset());
+                        case "xack" -> {
+                            var ids = List.of((String[]) args[2]);
+                            pending.removeIf(message -> ids.contains(message.getId()));
+                            acks.add(ids);
+                            yield (long) ids.size();
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        private List<StreamMessage<String, String>> read(String offset) {
+            // a reader that never gets idle is a bug, don't spin forever
+            if (++reads > 20)
+                running.set(false);
+            if (offset.equals("0"))
+                return List.copyOf(pending);
+            var delivered = List.copyOf(entries);
+            entries.clear();
+            pending.addAll(delivered);
+            if (delivered.isEmpty())
+                running.set(false);
+            return delivered;
+        }
+    }
+
+    private static StreamMessage<String, String> message(String id, String tid) {
+        return new StreamMessage<>(KEY, id, Map.of("tid", tid, "ids", "a", "bytes", "10"));
+    }
+
+    private static ChangeFeed.Event event(String id, String tid) {
+        return new ChangeFeed.Event(KEY, id, tid, List.of("a"), 10);
+    }
+
+    private static ChangeFeed changeFeed() {
+        var properties = new PlaygroundProperties();
+        properties.getChangeFeed().setBlock(Duration.ofMillis(1));
+        return new ChangeFeed(properties, null, null);
+    }
+
+    @Test
+    void testFailedEventsAreDeliveredAgain() {
+        var stream = new Stream();
+        stream.entries.addAll(List.of(message("1-0", "t1"), message("2-0", "t2")));
+        var handled = new ArrayList<List<ChangeFeed.Event>>();
+
+        changeFeed().readShard(stream.commands(), KEY, "group", "consumer", events -> {
+            handled.add(events);
+            if (handled.size() == 1)
+                throw new IllegalStateException("handler failed");
+        }, stream.running);
+
+        var expected = List.of(event("1-0", "t1"), event("2-0", "t2"));
+        Assertions.assertEquals(List.of(expected, expected), handled);
+        // only acknowledged once the handler succeeded
+        Assertions.assertEquals(List.of(List.of("1-0", "2-0")), stream.acks);
+        Assertions.assertTrue(stream.pending.isEmpty());
+        Assertions.assertTrue(stream.reads <= 20);
+    }
+
+    @Test
+    void testPendingEventsComeFirst() {
+        var stream = new Stream();
+        // delivered before a restart, the first one trimmed by MAXLEN meanwhile
+        stream.pending.addAll(List.of(new StreamMessage<String, String>(KEY, "0-1", null), message("0-2", "t0")));
+        stream.entries.add(message("3-0", "t3"));
+        var handled = new ArrayList<List<ChangeFeed.Event>>();
+
+        changeFeed().readShard(stream.commands(), KEY, "group", "consumer", handled::add, stream.running);
+
+        Assertions.assertEquals(List.of(List.of(event("0-2", "t0")), List.of(event("3-0", "t3"))), handled);
+        // trimmed entries are acknowledged too, or they'd be delivered forever
+        Assertions.assertEquals(List.of(List.of("0-1", "0-2"), List.of("3-0")), stream.acks);
+        Assertions.assertTrue(stream.pending.isEmpty());
+        Assertions.assertTrue(stream.reads <= 20);
+    }
+}
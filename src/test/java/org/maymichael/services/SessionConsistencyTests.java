@@ -0,0 +1,206 @@
+package org.maymichael.services;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.Partitions;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.protocol.ConnectionIntent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.config.PlaygroundProperties;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.IntStream;
+
+public class SessionConsistencyTests {
+
+    private static final byte[] KEY = "value:1".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * A node answering INFO replication with its current offset, {@literal null} fails the command.
+     */
+    private static final class Node {
+        final RedisClusterNode clusterNode = new RedisClusterNode();
+        final StatefulRedisConnection<byte[], byte[]> connection;
+        String info;
+        int infoCalls;
+
+        @SuppressWarnings("unchecked")
+        Node(String nodeId, String info) {
+            this.info = info;
+            clusterNode.setNodeId(nodeId);
+            var commands = (RedisCommands<byte[], byte[]>) stub(RedisCommands.class, (method, args) -> {
+                if (!method.equals("info"))
+                    throw new UnsupportedOperationException(method);
+                infoCalls++;
+                if (this.info == null)
+                    throw new IllegalStateException("node down");
+                return this.info;
+            });
+            connection = (StatefulRedisConnection<byte[], byte[]>) stub(StatefulRedisConnection.class, (method, args) -> commands);
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static Object stub(Class<?> type, Handler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method.getName(), args));
+    }
+
+    private static Node primary(long offset) {
+        var node = new Node("primary", "# Replication\r\nrole:master\r\nmaster_repl_offset:" + offset + "\r\n");
+        node.clusterNode.setFlags(Set.of(RedisClusterNode.NodeFlag.UPSTREAM));
+        node.clusterNode.setSlots(IntStream.range(0, SlotHash.SLOT_COUNT).boxed().toList());
+        return node;
+    }
+
+    private static Node replica(String nodeId, long offset) {
+        var node = new Node(nodeId, replicaInfo(offset));
+        node.clusterNode.setFlags(Set.of(RedisClusterNode.NodeFlag.REPLICA));
+        node.clusterNode.setSlaveOf("primary");
+        return node;
+    }
+
+    private static String replicaInfo(long offset) {
+        // replicas report the primary's offset they know of as well
+        return "# Replication\r\nrole:slave\r\nmaster_repl_offset:999999\r\nslave_repl_offset:" + offset + "\r\n";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SessionConsistency consistency(PlaygroundProperties.Consistency properties, Node primary, Node... replicas) {
+        var nodes = new HashMap<String, Node>();
+        var partitions = new Partitions();
+        for (var node : concat(primary, replicas)) {
+            nodes.put(node.clusterNode.getNodeId(), node);
+            partitions.add(node.clusterNode);
+        }
+        partitions.updateCache();
+        var connection = (StatefulRedisClusterConnection<byte[], byte[]>) stub(StatefulRedisClusterConnection.class, (method, args) ->
+                switch (method) {
+                    case "getPartitions" -> partitions;
+                    case "getConnection" -> {
+                        var node = nodes.get((String) args[0]);
+                        // replicas only with READ intent, so READONLY is sent
+                        Assertions.assertEquals(node == primary ? ConnectionIntent.WRITE : ConnectionIntent.READ, args[1]);
+                        yield node.connection;
+                    }
+                    default -> throw new UnsupportedOperationException(method);
+                });
+        return new SessionConsistency(properties, connection);
+    }
+
+    private static List<Node> concat(Node primary, Node... replicas) {
+        var nodes = new ArrayList<Node>();
+        nodes.add(primary);
+        nodes.addAll(List.of(replicas));
+        return nodes;
+    }
+
+    private static PlaygroundProperties.Consistency properties(Duration refreshInterval, Duration maxReplicaWait) {
+        var properties = new PlaygroundProperties.Consistency();
+        properties.setOffsetRefreshInterval(refreshInterval);
+        properties.setMaxReplicaWait(maxReplicaWait);
+        return properties;
+    }
+
+    @Test
+    void testOffsetParsing() {
+        var primary = primary(12345);
+        Assertions.assertEquals(12345, SessionConsistency.offset(primary.connection.sync(), "master_repl_offset"));
+        Assertions.assertEquals(-1, SessionConsistency.offset(primary.connection.sync(), "slave_repl_offset"));
+
+        var replica = replica("replica", 42);
+        Assertions.assertEquals(42, SessionConsistency.offset(replica.connection.sync(), "slave_repl_offset"));
+        // plain \n line endings
+        replica.info = "role:slave\nslave_repl_offset: 7 \n";
+        Assertions.assertEquals(7, SessionConsistency.offset(replica.connection.sync(), "slave_repl_offset"));
+    }
+
+    @Test
+    void testReadsFromReplicaThatCaughtUp() {
+        var primary = primary(100);
+        var behind = replica("behind", 50);
+        var caughtUp = replica("caught-up", 100);
+        var consistency = consistency(properties(Duration.ofMillis(10), Duration.ofMillis(50)), primary, behind, caughtUp);
+        var session = consistency.session();
+        consistency.recordWrites(session, List.of(KEY));
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertSame(caughtUp.connection, consistency.nodeFor(session, KEY));
+        }
+    }
+
+    @Test
+    void testFallsBackToPrimary() {
+        var primary = primary(100);
+        var behind = replica("behind", 50);
+        var down = replica("down", 100);
+        down.info = null;
+        var failed = replica("failed", 100);
+        failed.clusterNode.setFlags(Set.of(RedisClusterNode.NodeFlag.REPLICA, RedisClusterNode.NodeFlag.FAIL));
+        var consistency = consistency(properties(Duration.ofMillis(10), Duration.ZERO), primary, behind, down, failed);
+        var session = consistency.session();
+        consistency.recordWrites(session, List.of(KEY));
+
+        Assertions.assertSame(primary.connection, consistency.nodeFor(session, KEY));
+        // failed replicas aren't even asked
+        Assertions.assertEquals(0, failed.infoCalls);
+    }
+
+    @Test
+    void testKeysWithoutWritesReadFromAnyReplica() {
+        var primary = primary(100);
+        var first = replica("first", 0);
+        var second = replica("second", 0);
+        var consistency = consistency(properties(Duration.ofMillis(10), Duration.ZERO), primary, first, second);
+        var session = consistency.session();
+
+        for (int i = 0; i < 10; i++) {
+            var node = consistency.nodeFor(session, KEY);
+            Assertions.assertTrue(node == first.connection || node == second.connection);
+        }
+        Assertions.assertEquals(0, first.infoCalls + second.infoCalls);
+    }
+
+    @Test
+    void testWithoutReplicasReadsFromPrimary() {
+        var primary = primary(100);
+        var consistency = consistency(properties(Duration.ofMillis(10), Duration.ofMillis(50)), primary);
+        var session = consistency.session();
+        consistency.recordWrites(session, List.of(KEY));
+
+        Assertions.assertSame(primary.connection, consistency.nodeFor(session, KEY));
+    }
+
+    @Test
+    void testReplicaOffsetCache() {
+        var primary = primary(100);
+        var replica = replica("replica", 50);
+        var properties = properties(Duration.ofHours(1), Duration.ZERO);
+        var consistency = consistency(properties, primary, replica);
+        var session = consistency.session();
+        consistency.recordWrites(session, List.of(KEY));
+
+        Assertions.assertSame(primary.connection, consistency.nodeFor(session, KEY));
+        Assertions.assertEquals(1, replica.infoCalls);
+        // caught up meanwhile, but asked at most once per refresh interval
+        replica.info = replicaInfo(100);
+        Assertions.assertSame(primary.connection, consistency.nodeFor(session, KEY));
+        Assertions.assertEquals(1, replica.infoCalls);
+
+        properties.setOffsetRefreshInterval(Duration.ZERO);
+        Assertions.assertSame(replica.connection, consistency.nodeFor(session, KEY));
+        Assertions.assertEquals(2, replica.infoCalls);
+        // offsets only grow, one that reached the required offset is not asked again
+        Assertions.assertSame(replica.connection, consistency.nodeFor(session, KEY));
+        Assertions.assertEquals(2, replica.infoCalls);
+    }
+}
@@ -0,0 +1,150 @@
+package org.springframework.data.redis.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.data.TransactionValue;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// package private parts of the index layout, same package as the writer
+public class CompactIndexWriterTests {
+
+    private static final int SHARDS = 8;
+
+    private record Command(String name, String key, String member) {
+    }
+
+    private static class RecordingSink implements PipelinedRedisKeyValueAdapter.CommandSink {
+        private final List<Command> commands = new ArrayList<>();
+
+        private void record(String name, byte[] key, byte[] member) {
+            commands.add(new Command(name, string(key), string(member)));
+        }
+
+        @Override
+        public void hMSet(byte[] key, Map<byte[], byte[]> hashes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sAdd(byte[] key, byte[] member) {
+            record("sAdd", key, member);
+        }
+
+        @Override
+        public void expire(byte[] key, long seconds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void geoAdd(byte[] key, Point point, byte[] member) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sRem(byte[] key, byte[] member) {
+            record("sRem", key, member);
+        }
+
+        @Override
+        public void zAdd(byte[] key, double score, byte[] member) {
+            Assertions.assertEquals(0, score);
+            record("zAdd", key, member);
+        }
+
+        @Override
+        public void zRem(byte[] key, byte[] member) {
+            record("zRem", key, member);
+        }
+    }
+
+    private static CompactIndexWriter writer() {
+        var mappingContext = new RedisMappingContext();
+        mappingContext.getRequiredPersistentEntity(TransactionValue.class);
+        var converter = new MappingRedisConverter(mappingContext);
+        converter.afterPropertiesSet();
+        return new CompactIndexWriter(mappingContext, converter, List.of("value:something"), SHARDS);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String shardKey(String id) {
+        return "value:something:zidx:" + ClusterSlotHashUtil.calculateSlot(bytes(id)) % SHARDS;
+    }
+
+    @Test
+    void testIndexedPaths() {
+        Assertions.assertEquals(List.of("tid", "something"), writer().indexedPaths("value"));
+        Assertions.assertEquals(List.of(), writer().indexedPaths("other"));
+    }
+
+    @Test
+    void testHighCardinalityUsesSpringDataKeys() {
+        var writer = writer();
+        var sink = new RecordingSink();
+        writer.addIndex(sink, "value", "tid", bytes("value:tid:"), bytes("id-1"), bytes("t1"));
+        writer.removeIndexes(sink, "value", bytes("id-1"), Arrays.asList(bytes("t1"), null));
+
+        Assertions.assertEquals(List.of(
+                new Command("sAdd", "value:tid:t1", "id-1"),
+                new Command("sRem", "value:tid:t1", "id-1")), sink.commands);
+    }
+
+    @Test
+    void testLowCardinalityShardKeyAndMember() {
+        var writer = writer();
+        var sink = new RecordingSink();
+        for (var id : List.of("id-1", "id-2", "id-3")) {
+            writer.addIndex(sink, "value", "something", bytes("value:something:"), bytes(id), bytes("even"));
+        }
+        writer.removeIndexes(sink, "value", bytes("id-2"), List.of(bytes("t1"), bytes("even")));
+
+        Assertions.assertEquals(List.of(
+                new Command("zAdd", shardKey("id-1"), "even\0id-1"),
+                new Command("zAdd", shardKey("id-2"), "even\0id-2"),
+                new Command("zAdd", shardKey("id-3"), "even\0id-3"),
+                new Command("sRem", "value:tid:t1", "id-2"),
+                new Command("zRem", shardKey("id-2"), "even\0id-2")), sink.commands);
+
+        // findIds queries every shard, so every shard an entity can land in
+        var shardKeys = writer.shardKeys("value", "something").stream().map(CompactIndexWriterTests::string).toList();
+        Assertions.assertEquals(SHARDS, shardKeys.size());
+        sink.commands.forEach(command -> {
+            if (command.name().startsWith("z"))
+                Assertions.assertTrue(shardKeys.contains(command.key()), command.key());
+        });
+    }
+
+    @Test
+    void testLexRangeMatchesExactlyOneValue() {
+        var writer = writer();
+        var start = writer.rangeStart("even");
+        var end = writer.rangeEnd("even");
+
+        // ZRANGEBYLEX [start [end compares members bytewise
+        for (var member : List.of("even\0id-1", "even\0ffffffff-ffff-ffff-ffff-ffffffffffff", "even\0")) {
+            var bytes = bytes(member);
+            Assertions.assertTrue(Arrays.compareUnsigned(start, bytes) <= 0 && Arrays.compareUnsigned(bytes, end) <= 0, member);
+        }
+        for (var member : List.of("eve\0id-1", "evening\0id-1", "odd\0id-1", "even")) {
+            var bytes = bytes(member);
+            Assertions.assertFalse(Arrays.compareUnsigned(start, bytes) <= 0 && Arrays.compareUnsigned(bytes, end) <= 0, member);
+        }
+
+        Assertions.assertEquals("id-1", string(CompactIndexWriter.idFromMember(bytes("even\0id-1"), start)));
+    }
+}
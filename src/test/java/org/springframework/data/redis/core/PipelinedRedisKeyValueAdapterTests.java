@@ -0,0 +1,87 @@
+package org.springframework.data.redis.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.maymichael.data.TransactionValue;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PipelinedRedisKeyValueAdapterTests {
+
+    @Test
+    void testSlotGroupedChunks() {
+        // slot = value / 10, inserted out of slot order
+        var items = List.of(31, 5, 12, 30, 1, 11, 32, 2, 10, 3);
+        var chunks = PipelinedRedisKeyValueAdapter.slotGroupedChunks(items, item -> item / 10, 4);
+
+        Assertions.assertEquals(List.of(List.of(5, 1, 2, 3), List.of(12, 11, 10, 31), List.of(30, 32)), chunks);
+    }
+
+    @Test
+    void testSlotGroupedChunksKeepEveryItemOnce() {
+        var items = IntStream.range(0, 1001).boxed().toList();
+        for (var batchSize : List.of(1, 7, 500, 1001, 5000)) {
+            var chunks = PipelinedRedisKeyValueAdapter.slotGroupedChunks(items, item -> item % 16, batchSize);
+            var flattened = new ArrayList<Integer>();
+            chunks.forEach(chunk -> {
+                Assertions.assertTrue(!chunk.isEmpty() && chunk.size() <= batchSize);
+                flattened.addAll(chunk);
+            });
+            Assertions.assertEquals(items.size(), flattened.size());
+            Assertions.assertEquals(items, flattened.stream().sorted().toList());
+            Assertions.assertEquals((items.size() + batchSize - 1) / batchSize, chunks.size());
+        }
+        Assertions.assertEquals(List.of(), PipelinedRedisKeyValueAdapter.slotGroupedChunks(List.<Integer>of(), item -> 0, 10));
+    }
+
+    private static PipelinedRedisKeyValueAdapter adapter() {
+        var template = new RedisTemplate<String, byte[]>();
+        // never connected, spring data's adapter wants one for its listener container
+        template.setConnectionFactory(new LettuceConnectionFactory());
+        return new PipelinedRedisKeyValueAdapter(template, new RedisMappingContext(), null);
+    }
+
+    @Test
+    void testBatchSizeMustBePositive() {
+        var adapter = adapter();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> adapter.setBatchSize(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> adapter.setBatchSize(-1));
+        adapter.setBatchSize(1);
+    }
+
+    @Test
+    void testEncoderReusesEntitiesAfterReset() {
+        var adapter = adapter();
+        var first = TransactionValue.builder().tid("t1").something("even").build();
+        var second = TransactionValue.builder().tid("t2").something("odd").build();
+        // compiles and verifies the writer, verification may hand out a new instance
+        adapter.encode(first.getId(), first);
+        var encoder = adapter.encoder();
+
+        var a = encoder.encode(first.getId(), first);
+        var b = encoder.encode(second.getId(), second);
+        Assertions.assertNotSame(a, b);
+        Assertions.assertEquals(first.getId(), a.getId());
+        Assertions.assertEquals(second.getId(), b.getId());
+        var hashSize = b.getHash().size();
+
+        encoder.reset();
+        Assertions.assertNull(a.getId());
+        Assertions.assertTrue(a.getHash().isEmpty());
+        var c = encoder.encode(second.getId(), second);
+        Assertions.assertSame(a, c);
+        Assertions.assertEquals(second.getId(), c.getId());
+        Assertions.assertEquals(hashSize, c.getHash().size());
+        Assertions.assertEquals(Set.of("value:tid:t2", "value:something:odd"),
+                c.getIndexKeys().stream().map(key -> new String(key, StandardCharsets.UTF_8)).collect(Collectors.toSet()));
+        // already encoded entities are passed through, not copied
+        Assertions.assertSame(b, encoder.encode(second.getId(), b));
+    }
+}